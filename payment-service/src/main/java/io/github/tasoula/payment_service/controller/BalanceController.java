@@ -1,5 +1,6 @@
 package io.github.tasoula.payment_service.controller;
 
+import io.github.tasoula.payment_service.exceptions.IdempotencyKeyReusedException;
 import io.github.tasoula.payment_service.exceptions.InsufficientFundsException;
 import io.github.tasoula.payment_service.service.BalanceService;
 import io.github.tasoula.server.api.DefaultApi;
@@ -11,6 +12,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
@@ -44,15 +46,20 @@ public class BalanceController implements DefaultApi {
     public Mono<ResponseEntity<Void>> paymentUserIdPost(
             @Parameter(name = "userId", description = "UUID пользователя", required = true, in = ParameterIn.PATH) @PathVariable("userId") UUID userId,
             @Parameter(name = "Amount", description = "", required = true) @Valid @RequestBody Mono<Amount> amount,
+            @Parameter(name = "Idempotency-Key", description = "Ключ идемпотентности платежа (например, id заказа)", in = ParameterIn.HEADER) @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Parameter(hidden = true) final ServerWebExchange exchange
     ) {
-        return amount.flatMap(sum -> service.withdraw(userId, sum.getAmount()))
+        return amount.flatMap(sum -> (idempotencyKey == null || idempotencyKey.isBlank())
+                        ? service.withdraw(userId, sum.getAmount())
+                        : service.withdraw(userId, sum.getAmount(), idempotencyKey))
                 .map(ResponseEntity::ok)
                 .onErrorResume(throwable -> {
                     if (throwable instanceof InsufficientFundsException) {
                         return Mono.just(ResponseEntity.status(HttpStatus.PAYMENT_REQUIRED).<Void>build()); // 402
                     } else if (throwable instanceof NoSuchElementException) {
                         return Mono.just(ResponseEntity.notFound().build()); // 404
+                    } else if (throwable instanceof IdempotencyKeyReusedException) {
+                        return Mono.just(ResponseEntity.unprocessableEntity().<Void>build()); // 422
                     } else {
                         return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<Void>build()); // 500
                     }
@@ -0,0 +1,30 @@
+package io.github.tasoula.payment_service.dao;
+
+import io.github.tasoula.payment_service.model.PaymentRequest;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Repository
+public interface PaymentRequestRepository extends ReactiveCrudRepository<PaymentRequest, String> {
+
+    // 1 - ключ занят этим запросом, 0 - ключ уже обработан. Параллельный запрос с тем же ключом
+    // ждёт на уникальном индексе, пока первый не завершит транзакцию
+    @Modifying
+    @Query("""
+            INSERT INTO t_payment_requests(idempotency_key, user_id, amount)
+            VALUES (:key, :userId, :amount)
+            ON CONFLICT (idempotency_key) DO NOTHING
+            """)
+    Mono<Integer> insertIfAbsent(@Param("key") String key, @Param("userId") UUID userId, @Param("amount") BigDecimal amount);
+
+    @Modifying
+    @Query("UPDATE t_payment_requests SET outcome = :outcome WHERE idempotency_key = :key")
+    Mono<Integer> saveOutcome(@Param("key") String key, @Param("outcome") String outcome);
+}
@@ -0,0 +1,7 @@
+package io.github.tasoula.payment_service.exceptions;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
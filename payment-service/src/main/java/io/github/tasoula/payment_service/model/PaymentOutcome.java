@@ -0,0 +1,8 @@
+package io.github.tasoula.payment_service.model;
+
+// Результат платежа, сохраняемый для ответа на повторы
+public enum PaymentOutcome {
+    PAID,
+    INSUFFICIENT_FUNDS,
+    ACCOUNT_NOT_FOUND
+}
@@ -0,0 +1,69 @@
+package io.github.tasoula.payment_service.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Table(name = "t_payment_requests")
+public class PaymentRequest {
+
+    @Id
+    @Column("idempotency_key")
+    private String idempotencyKey;
+
+    @Column("user_id")
+    private UUID userId;
+
+    private BigDecimal amount;
+
+    private PaymentOutcome outcome;
+
+    public PaymentRequest() {}
+
+    public PaymentRequest(String idempotencyKey, UUID userId, BigDecimal amount, PaymentOutcome outcome) {
+        this.idempotencyKey = idempotencyKey;
+        this.userId = userId;
+        this.amount = amount;
+        this.outcome = outcome;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public void setUserId(UUID userId) {
+        this.userId = userId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public PaymentOutcome getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(PaymentOutcome outcome) {
+        this.outcome = outcome;
+    }
+
+    // Повтор того же платежа, а не другой платёж с тем же ключом
+    public boolean matches(UUID userId, BigDecimal amount) {
+        return this.userId.equals(userId) && this.amount.compareTo(amount) == 0;
+    }
+}
@@ -1,10 +1,14 @@
 package io.github.tasoula.payment_service.service;
 
 import io.github.tasoula.payment_service.dao.BalanceRepository;
+import io.github.tasoula.payment_service.dao.PaymentRequestRepository;
+import io.github.tasoula.payment_service.exceptions.IdempotencyKeyReusedException;
 import io.github.tasoula.payment_service.exceptions.InsufficientFundsException;
+import io.github.tasoula.payment_service.model.PaymentOutcome;
 import io.github.tasoula.payment_service.model.UserBalance;
 import io.github.tasoula.server.domain.Amount;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
@@ -14,9 +18,11 @@ import java.util.UUID;
 @Service
 public class BalanceService {
     private final BalanceRepository repository;
+    private final PaymentRequestRepository paymentRequestRepository;
 
-    public BalanceService(BalanceRepository repository) {
+    public BalanceService(BalanceRepository repository, PaymentRequestRepository paymentRequestRepository) {
         this.repository = repository;
+        this.paymentRequestRepository = paymentRequestRepository;
     }
 
     public Mono<BigDecimal> getBalance(UUID userId) {
@@ -43,5 +49,40 @@ public class BalanceService {
                             .then();
                 });
     }
-}
 
+    // Платёж с ключом идемпотентности: ключ и результат записываются в одной транзакции со списанием,
+    // повтор получает сохранённый результат без повторного списания
+    @Transactional
+    public Mono<Void> withdraw(UUID userId, BigDecimal amount, String idempotencyKey) {
+        return paymentRequestRepository.insertIfAbsent(idempotencyKey, userId, amount)
+                .flatMap(inserted -> inserted > 0
+                        ? withdrawOnce(userId, amount, idempotencyKey)
+                        : storedOutcome(userId, amount, idempotencyKey))
+                .flatMap(BalanceService::replay);
+    }
+
+    private Mono<PaymentOutcome> withdrawOnce(UUID userId, BigDecimal amount, String idempotencyKey) {
+        return withdraw(userId, amount)
+                .thenReturn(PaymentOutcome.PAID)
+                .onErrorResume(InsufficientFundsException.class, e -> Mono.just(PaymentOutcome.INSUFFICIENT_FUNDS))
+                .onErrorResume(NoSuchElementException.class, e -> Mono.just(PaymentOutcome.ACCOUNT_NOT_FOUND))
+                .flatMap(outcome -> paymentRequestRepository.saveOutcome(idempotencyKey, outcome.name())
+                        .thenReturn(outcome));
+    }
+
+    private Mono<PaymentOutcome> storedOutcome(UUID userId, BigDecimal amount, String idempotencyKey) {
+        return paymentRequestRepository.findById(idempotencyKey)
+                .flatMap(request -> request.matches(userId, amount)
+                        ? Mono.just(request.getOutcome())
+                        : Mono.error(new IdempotencyKeyReusedException("Idempotency key " + idempotencyKey
+                                + " was used for another payment")));
+    }
+
+    private static Mono<Void> replay(PaymentOutcome outcome) {
+        return switch (outcome) {
+            case PAID -> Mono.empty();
+            case INSUFFICIENT_FUNDS -> Mono.error(new InsufficientFundsException("Insufficient funds"));
+            case ACCOUNT_NOT_FOUND -> Mono.error(new NoSuchElementException("Balance not found"));
+        };
+    }
+}
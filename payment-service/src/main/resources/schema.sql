@@ -4,4 +4,11 @@ CREATE TABLE IF NOT EXISTS t_balance (
     balance DECIMAL(10,2) NOT NULL
 );
 
-
+-- Обработанные платежи по ключу идемпотентности: повтор запроса получает сохранённый результат
+CREATE TABLE IF NOT EXISTS t_payment_requests (
+    idempotency_key VARCHAR(100) PRIMARY KEY,
+    user_id UUID NOT NULL,
+    amount DECIMAL(10,2) NOT NULL,
+    outcome VARCHAR(30),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
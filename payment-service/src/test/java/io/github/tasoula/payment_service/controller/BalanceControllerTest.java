@@ -1,5 +1,6 @@
 package io.github.tasoula.payment_service.controller;
 
+import io.github.tasoula.payment_service.exceptions.IdempotencyKeyReusedException;
 import io.github.tasoula.payment_service.exceptions.InsufficientFundsException;
 import io.github.tasoula.payment_service.service.BalanceService;
 import io.github.tasoula.server.domain.Amount;
@@ -17,6 +18,9 @@ import java.math.BigDecimal;
 import java.util.NoSuchElementException;
 import java.util.UUID;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
 
@@ -151,4 +155,42 @@ class BalanceControllerTest {
                 .exchange()
                 .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
     }
-}
\ No newline at end of file
+
+    @WithMockUser
+    @Test
+    void testPaymentUserIdPost_WithIdempotencyKey_UsesIdempotentWithdraw() {
+        UUID userId = UUID.randomUUID();
+        Amount amount = new Amount(BigDecimal.valueOf(20));
+        when(service.withdraw(userId, amount.getAmount(), "order-1")).thenReturn(Mono.empty());
+
+        webTestClient.mutateWith(csrf())
+                .post()
+                .uri("/payment/{userId}", userId)
+                .header("Idempotency-Key", "order-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(amount)
+                .exchange()
+                .expectStatus().isOk();
+
+        verify(service).withdraw(userId, amount.getAmount(), "order-1");
+        verify(service, never()).withdraw(any(), any());
+    }
+
+    @WithMockUser
+    @Test
+    void testPaymentUserIdPost_IdempotencyKeyReused() {
+        UUID userId = UUID.randomUUID();
+        Amount amount = new Amount(BigDecimal.valueOf(20));
+        when(service.withdraw(userId, amount.getAmount(), "order-1"))
+                .thenReturn(Mono.error(new IdempotencyKeyReusedException("reused")));
+
+        webTestClient.mutateWith(csrf())
+                .post()
+                .uri("/payment/{userId}", userId)
+                .header("Idempotency-Key", "order-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(amount)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+}
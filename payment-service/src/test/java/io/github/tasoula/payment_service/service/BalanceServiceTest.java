@@ -3,7 +3,11 @@ package io.github.tasoula.payment_service.service;
 import static org.junit.jupiter.api.Assertions.*;
 
 import io.github.tasoula.payment_service.dao.BalanceRepository;
+import io.github.tasoula.payment_service.dao.PaymentRequestRepository;
+import io.github.tasoula.payment_service.exceptions.IdempotencyKeyReusedException;
 import io.github.tasoula.payment_service.exceptions.InsufficientFundsException;
+import io.github.tasoula.payment_service.model.PaymentOutcome;
+import io.github.tasoula.payment_service.model.PaymentRequest;
 import io.github.tasoula.payment_service.model.UserBalance;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -25,6 +29,9 @@ public class BalanceServiceTest {
     @Mock
     private BalanceRepository repository;
 
+    @Mock
+    private PaymentRequestRepository paymentRequestRepository;
+
     @InjectMocks
     private BalanceService balanceService;
 
@@ -107,4 +114,62 @@ public class BalanceServiceTest {
 
         verify(repository, never()).save(any(UserBalance.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void withdrawWithKey_FirstRequest_WithdrawsAndStoresOutcome() {
+        BigDecimal withdrawAmount = BigDecimal.valueOf(1000);
+        UserBalance userBalance = new UserBalance(UUID.randomUUID(), userId, BigDecimal.valueOf(5000));
+        when(paymentRequestRepository.insertIfAbsent("order-1", userId, withdrawAmount)).thenReturn(Mono.just(1));
+        when(repository.findByUserId(userId)).thenReturn(Mono.just(userBalance));
+        when(repository.save(any(UserBalance.class))).thenReturn(Mono.just(userBalance));
+        when(paymentRequestRepository.saveOutcome("order-1", "PAID")).thenReturn(Mono.just(1));
+
+        StepVerifier.create(balanceService.withdraw(userId, withdrawAmount, "order-1"))
+                .verifyComplete();
+
+        verify(paymentRequestRepository).saveOutcome("order-1", "PAID");
+    }
+
+    @Test
+    void withdrawWithKey_FirstRequestDeclined_StoresDeclineAndThrows() {
+        BigDecimal withdrawAmount = BigDecimal.valueOf(1000);
+        UserBalance userBalance = new UserBalance(UUID.randomUUID(), userId, BigDecimal.valueOf(500));
+        when(paymentRequestRepository.insertIfAbsent("order-1", userId, withdrawAmount)).thenReturn(Mono.just(1));
+        when(repository.findByUserId(userId)).thenReturn(Mono.just(userBalance));
+        when(paymentRequestRepository.saveOutcome("order-1", "INSUFFICIENT_FUNDS")).thenReturn(Mono.just(1));
+
+        StepVerifier.create(balanceService.withdraw(userId, withdrawAmount, "order-1"))
+                .expectError(InsufficientFundsException.class)
+                .verify();
+
+        verify(paymentRequestRepository).saveOutcome("order-1", "INSUFFICIENT_FUNDS");
+    }
+
+    @Test
+    void withdrawWithKey_Retry_ReturnsStoredOutcomeWithoutWithdrawing() {
+        BigDecimal withdrawAmount = BigDecimal.valueOf(1000);
+        when(paymentRequestRepository.insertIfAbsent("order-1", userId, withdrawAmount)).thenReturn(Mono.just(0));
+        when(paymentRequestRepository.findById("order-1"))
+                .thenReturn(Mono.just(new PaymentRequest("order-1", userId, new BigDecimal("1000.00"), PaymentOutcome.PAID)));
+
+        StepVerifier.create(balanceService.withdraw(userId, withdrawAmount, "order-1"))
+                .verifyComplete();
+
+        verify(repository, never()).findByUserId(any());
+        verify(repository, never()).save(any(UserBalance.class));
+    }
+
+    @Test
+    void withdrawWithKey_KeyReusedForAnotherPayment_ThrowsException() {
+        BigDecimal withdrawAmount = BigDecimal.valueOf(1000);
+        when(paymentRequestRepository.insertIfAbsent("order-1", userId, withdrawAmount)).thenReturn(Mono.just(0));
+        when(paymentRequestRepository.findById("order-1"))
+                .thenReturn(Mono.just(new PaymentRequest("order-1", userId, BigDecimal.valueOf(50), PaymentOutcome.PAID)));
+
+        StepVerifier.create(balanceService.withdraw(userId, withdrawAmount, "order-1"))
+                .expectError(IdempotencyKeyReusedException.class)
+                .verify();
+
+        verify(repository, never()).save(any(UserBalance.class));
+    }
+}
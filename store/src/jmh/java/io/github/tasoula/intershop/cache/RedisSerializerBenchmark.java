@@ -0,0 +1,104 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Сравнение форматов кеша каталога (cache.serializer): json - те же сериализаторы, что RedisConfig
+ * использует по умолчанию, binary - VersionedBinaryRedisSerializer. Размер значений проверяет BinaryRedisSerializerTest.
+ * Запуск: ./gradlew :store:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedisSerializerBenchmark {
+
+    // Размер страницы каталога
+    @Param({"10", "50"})
+    private int pageSize;
+
+    private final RedisSerializer<Product> jsonProductSerializer =
+            new JsonFallbackRedisSerializer<>(new Jackson2JsonRedisSerializer<>(Product.class));
+    private final RedisSerializer<Object> jsonPageSerializer =
+            new JsonFallbackRedisSerializer<>(new GenericJackson2JsonRedisSerializer());
+    private final ProductBinaryRedisSerializer binaryProductSerializer = new ProductBinaryRedisSerializer();
+    private final CachedPageBinaryRedisSerializer binaryPageSerializer = new CachedPageBinaryRedisSerializer();
+
+    private Product product;
+    private CachedPage page;
+    private byte[] jsonProduct;
+    private byte[] binaryProduct;
+    private byte[] jsonPage;
+    private byte[] binaryPage;
+
+    @Setup
+    public void setUp() {
+        product = product(0);
+        page = new CachedPage(IntStream.range(0, pageSize).mapToObj(RedisSerializerBenchmark::product).toList(),
+                System.currentTimeMillis(), 12);
+        jsonProduct = jsonProductSerializer.serialize(product);
+        binaryProduct = binaryProductSerializer.serialize(product);
+        jsonPage = jsonPageSerializer.serialize(page);
+        binaryPage = binaryPageSerializer.serialize(page);
+    }
+
+    private static Product product(int i) {
+        return new Product(UUID.randomUUID(), "Товар " + i, "Описание товара номер " + i, "img/" + i + ".png",
+                new BigDecimal("1999.90").add(BigDecimal.valueOf(i)), i);
+    }
+
+    @Benchmark
+    public byte[] productJsonSerialize() {
+        return jsonProductSerializer.serialize(product);
+    }
+
+    @Benchmark
+    public byte[] productBinarySerialize() {
+        return binaryProductSerializer.serialize(product);
+    }
+
+    @Benchmark
+    public Product productJsonDeserialize() {
+        return jsonProductSerializer.deserialize(jsonProduct);
+    }
+
+    @Benchmark
+    public Product productBinaryDeserialize() {
+        return binaryProductSerializer.deserialize(binaryProduct);
+    }
+
+    @Benchmark
+    public byte[] pageJsonSerialize() {
+        return jsonPageSerializer.serialize(page);
+    }
+
+    @Benchmark
+    public byte[] pageBinarySerialize() {
+        return binaryPageSerializer.serialize(page);
+    }
+
+    @Benchmark
+    public Object pageJsonDeserialize() {
+        return jsonPageSerializer.deserialize(jsonPage);
+    }
+
+    @Benchmark
+    public CachedPage pageBinaryDeserialize() {
+        return binaryPageSerializer.deserialize(binaryPage);
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.tasoula.intershop.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Баланс пользователя из сервиса платежей с коротким TTL (допустимая устаревшесть для страницы корзины).
+ * Одновременные запросы баланса одного пользователя объединяются в один вызов, ошибки не кешируются.
+ * После оплаты запись сбрасывается на всех узлах через шину инвалидации.
+ */
+@Component
+public class BalanceCache implements InitializingBean, DisposableBean {
+    static final String CACHE_NAME = "balance";
+
+    private final AsyncCache<UUID, BigDecimal> cache;
+    private final CacheInvalidationBus invalidationBus;
+    private Disposable subscription;
+
+    public BalanceCache(CacheInvalidationBus invalidationBus,
+                        @Value("${cache.balance.ttl:PT30S}") Duration ttl,
+                        @Value("${cache.balance.max-size:10000}") long maxSize) {
+        this.invalidationBus = invalidationBus;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .buildAsync();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        subscription = invalidationBus.subscribe(this::evictLocal);
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    // Пустой ответ загрузчика не кешируется. Отмена подписки одним запросом не отменяет общую загрузку
+    public Mono<BigDecimal> get(UUID userId, Supplier<Mono<BigDecimal>> loader) {
+        return Mono.fromFuture(() -> cache.get(userId, (key, executor) -> loader.get().toFuture()), true);
+    }
+
+    public void evict(UUID userId) {
+        cache.synchronous().invalidate(userId);
+        invalidationBus.publish(CACHE_NAME, userId);
+    }
+
+    // Событие от другого узла
+    void evictLocal(String cacheName, String key) {
+        if (!CACHE_NAME.equals(cacheName)) {
+            return;
+        }
+        if (key == null) {
+            cache.synchronous().invalidateAll();
+        } else {
+            cache.synchronous().invalidate(UUID.fromString(key));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.tasoula.intershop.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Шина инвалидации локальных кешей через Redis pub/sub.
+ * Узел, изменивший кеш, публикует событие (имя кеша и ключ, без ключа - очистка всего кеша),
+ * остальные узлы удаляют у себя локальные копии. Собственные события узел игнорирует.
+ */
+@Slf4j
+public class CacheInvalidationBus {
+    private static final String SEPARATOR = "|";
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final String channel;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public CacheInvalidationBus(ReactiveStringRedisTemplate redisTemplate, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+    }
+
+    // key == null - очистить кеш целиком
+    public void publish(String cacheName, Object key) {
+        String message = nodeId + SEPARATOR + cacheName + (key == null ? "" : SEPARATOR + key);
+        redisTemplate.convertAndSend(channel, message)
+                .subscribe(
+                        receivers -> log.debug("Инвалидация {} отправлена {} узлам", message, receivers),
+                        e -> log.warn("Не удалось отправить инвалидацию кеша {}: {}", message, e.getMessage())
+                );
+    }
+
+    // handler получает имя кеша и строковый ключ (null - очистка всего кеша)
+    public Disposable subscribe(BiConsumer<String, String> handler) {
+        return redisTemplate.listenToChannel(channel)
+                .doOnNext(message -> {
+                    String[] parts = message.getMessage().split("\\|", 3);
+                    if (parts.length < 2 || nodeId.equals(parts[0])) {
+                        return;
+                    }
+                    handler.accept(parts[1], parts.length > 2 ? parts[2] : null);
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Подписка на инвалидацию кешей прервана: {}", signal.failure().getMessage())))
+                .subscribe();
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Закешированная страница каталога вместе с метаданными для раннего обновления:
+ * момент логического истечения и время, затраченное на её вычисление.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedPage {
+    private List<Product> products;
+    private long expiresAt;
+    private long computeMillis;
+}
@@ -0,0 +1,45 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Значения кеша products_all: метаданные страницы и товары подряд, без имён классов и полей
+public class CachedPageBinaryRedisSerializer extends VersionedBinaryRedisSerializer<CachedPage> {
+
+    public CachedPageBinaryRedisSerializer() {
+        super(new GenericJackson2JsonRedisSerializer());
+    }
+
+    @Override
+    protected void write(DataOutputStream out, CachedPage page) throws IOException {
+        out.writeLong(page.getExpiresAt());
+        out.writeLong(page.getComputeMillis());
+        out.writeInt(page.getProducts().size());
+        for (Product product : page.getProducts()) {
+            writeProduct(out, product);
+        }
+    }
+
+    @Override
+    protected CachedPage read(DataInputStream in) throws IOException {
+        long expiresAt = in.readLong();
+        long computeMillis = in.readLong();
+        int size = in.readInt();
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(readProduct(in));
+        }
+        return new CachedPage(products, expiresAt, computeMillis);
+    }
+
+    @Override
+    protected Class<CachedPage> type() {
+        return CachedPage.class;
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.tasoula.intershop.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * JSON-формат значений кешей товаров (cache.serializer=json). Значения, которые не начинаются с '{' или '[',
+ * записаны бинарным сериализатором до обратного переключения и считаются промахом кеша - значение перезапишется.
+ */
+public class JsonFallbackRedisSerializer<T> implements RedisSerializer<T> {
+
+    private final RedisSerializer<T> json;
+
+    public JsonFallbackRedisSerializer(RedisSerializer<T> json) {
+        this.json = json;
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        return json.serialize(value);
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0 || (bytes[0] != '{' && bytes[0] != '[')) {
+            return null;
+        }
+        return json.deserialize(bytes);
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return json.getTargetType();
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Значения кеша products
+public class ProductBinaryRedisSerializer extends VersionedBinaryRedisSerializer<Product> {
+
+    public ProductBinaryRedisSerializer() {
+        super(new Jackson2JsonRedisSerializer<>(Product.class));
+    }
+
+    @Override
+    protected void write(DataOutputStream out, Product product) throws IOException {
+        writeProduct(out, product);
+    }
+
+    @Override
+    protected Product read(DataInputStream in) throws IOException {
+        return readProduct(in);
+    }
+
+    @Override
+    protected Class<Product> type() {
+        return Product.class;
+    }
+}
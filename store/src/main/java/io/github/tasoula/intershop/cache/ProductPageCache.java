@@ -0,0 +1,146 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Кеш страниц каталога (products_all) с защитой от лавины промахов:
+ * <ul>
+ *     <li>одновременные промахи по одному ключу на узле выполняют один запрос к БД (single-flight);</li>
+ *     <li>незадолго до истечения TTL запись с вероятностью, растущей к концу срока, обновляется
+ *     в фоне (XFetch), а запрос получает текущее значение без ожидания.</li>
+ * </ul>
+ * Состав страниц записывается в {@link ProductPageIndex}, чтобы при изменении товара
+ * сбрасывать только затронутые страницы.
+ */
+@Slf4j
+@Component
+public class ProductPageCache {
+    public static final String CACHE_NAME = "products_all";
+
+    private final CacheManager cacheManager;
+    private final ProductPageIndex pageIndex;
+    private final Duration ttl;
+    private final double beta;
+    private final ConcurrentMap<String, Mono<CachedPage>> inFlight = new ConcurrentHashMap<>();
+
+    public ProductPageCache(CacheManager cacheManager,
+                            ProductPageIndex pageIndex,
+                            @Value("${cache.products-all.ttl:PT3M}") Duration ttl,
+                            @Value("${cache.products-all.early-refresh-beta:1.0}") double beta) {
+        this.cacheManager = cacheManager;
+        this.pageIndex = pageIndex;
+        this.ttl = ttl;
+        this.beta = beta;
+    }
+
+    // Поисковая строка - в конце ключа, чтобы её можно было извлечь при инвалидации
+    public static String key(String search, Pageable pageable) {
+        return pageable.getPageNumber() + "-" + pageable.getPageSize() + "-" + pageable.getSort() + "-"
+                + (search == null ? "" : search);
+    }
+
+    static String searchOf(String key) {
+        String[] parts = key.split("-", 4);
+        return parts.length < 4 ? "" : parts[3];
+    }
+
+    public Mono<List<Product>> get(String search, Pageable pageable, Supplier<Mono<List<Product>>> loader) {
+        String key = key(search, pageable);
+        return read(key)
+                .doOnNext(page -> {
+                    if (shouldRefreshEarly(page)) {
+                        load(key, loader).subscribe(
+                                refreshed -> log.debug("Страница каталога {} обновлена заранее", key),
+                                e -> log.warn("Не удалось заранее обновить страницу каталога {}: {}", key, e.getMessage()));
+                    }
+                })
+                .switchIfEmpty(Mono.defer(() -> load(key, loader)))
+                .map(CachedPage::getProducts);
+    }
+
+    private Mono<CachedPage> read(String key) {
+        return Mono.defer(() -> {
+            CompletableFuture<?> future = cache().retrieve(key);
+            return future == null ? Mono.empty() : Mono.fromFuture(future);
+        }).flatMap(result -> {
+            Object value = (result instanceof Cache.ValueWrapper wrapper) ? wrapper.get() : result;
+            return (value instanceof CachedPage page) ? Mono.just(page) : Mono.empty();
+        });
+    }
+
+    // Один запрос к БД на ключ: остальные подписчики получают результат уже выполняющейся загрузки
+    private Mono<CachedPage> load(String key, Supplier<Mono<List<Product>>> loader) {
+        return inFlight.computeIfAbsent(key, k -> Mono.defer(() -> {
+                    long startedAt = System.currentTimeMillis();
+                    return loader.get().map(products -> {
+                        long now = System.currentTimeMillis();
+                        return new CachedPage(products, now + ttl.toMillis(), now - startedAt);
+                    });
+                })
+                .doOnNext(page -> putLoaded(key, page))
+                .flatMap(page -> pageIndex.record(key, page.getProducts().stream().map(Product::getId).toList(), ttl)
+                        .thenReturn(page))
+                .doFinally(signal -> inFlight.remove(key))
+                .cache());
+    }
+
+    // Загруженная или заранее обновлённая страница - не изменение каталога: другие узлы не уведомляем,
+    // их копии сбрасываются событиями evict при изменении товаров
+    private void putLoaded(String key, CachedPage page) {
+        Cache cache = cache();
+        if (cache instanceof TwoLevelCache twoLevelCache) {
+            twoLevelCache.putLoaded(key, page);
+        } else {
+            cache.put(key, page);
+        }
+    }
+
+    // Страницы, на которых есть товар (изменились его данные или остаток)
+    public Mono<Void> evictPagesContaining(UUID productId) {
+        return pageIndex.pagesContaining(productId)
+                .collectList()
+                .flatMap(keys -> {
+                    keys.forEach(cache()::evict);
+                    return pageIndex.forgetProduct(productId);
+                });
+    }
+
+    // Страницы, порядок которых мог сдвинуться (новый товар, смена цены, названия или наличия):
+    // отбираются по поисковой строке, страницы чужих поисков остаются в кеше
+    public Mono<Void> evictPages(Predicate<String> searchFilter) {
+        return pageIndex.activePages()
+                .filter(key -> searchFilter.test(searchOf(key)))
+                .collectList()
+                .flatMap(keys -> {
+                    keys.forEach(cache()::evict);
+                    return pageIndex.forgetPages(keys);
+                });
+    }
+
+    // XFetch: now - delta * beta * ln(rand) >= expiry
+    boolean shouldRefreshEarly(CachedPage page) {
+        double gap = page.getComputeMillis() * beta * -Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= page.getExpiresAt();
+    }
+
+    private Cache cache() {
+        return cacheManager.getCache(CACHE_NAME);
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.tasoula.intershop.cache;
+
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Индекс закешированных страниц каталога в Redis (общий для всех узлов):
+ * для каждого товара - множество ключей страниц, на которых он есть,
+ * и сортированное множество всех живых ключей страниц (score - момент истечения).
+ */
+@Component
+public class ProductPageIndex {
+    private static final String PRODUCT_PAGES_PREFIX = "products_all:idx:";
+    private static final String PAGE_KEYS = "products_all:keys";
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    public ProductPageIndex(ReactiveStringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public Mono<Void> record(String pageKey, Collection<UUID> productIds, Duration ttl) {
+        long now = System.currentTimeMillis();
+        Mono<Void> pageKeys = redisTemplate.opsForZSet().add(PAGE_KEYS, pageKey, now + ttl.toMillis())
+                // Заодно вычищаем ключи страниц, которые уже истекли в Redis
+                .then(redisTemplate.opsForZSet().removeRangeByScore(PAGE_KEYS,
+                        Range.leftUnbounded(Range.Bound.exclusive((double) now))))
+                .then();
+        Mono<Void> productPages = Flux.fromIterable(productIds)
+                .filter(Objects::nonNull)
+                .flatMap(id -> redisTemplate.opsForSet().add(PRODUCT_PAGES_PREFIX + id, pageKey)
+                        .then(redisTemplate.expire(PRODUCT_PAGES_PREFIX + id, ttl)))
+                .then();
+        return pageKeys.then(productPages);
+    }
+
+    public Flux<String> pagesContaining(UUID productId) {
+        return redisTemplate.opsForSet().members(PRODUCT_PAGES_PREFIX + productId);
+    }
+
+    public Flux<String> activePages() {
+        return redisTemplate.opsForZSet().rangeByScore(PAGE_KEYS,
+                Range.rightUnbounded(Range.Bound.inclusive((double) System.currentTimeMillis())));
+    }
+
+    public Mono<Void> forgetProduct(UUID productId) {
+        return redisTemplate.delete(PRODUCT_PAGES_PREFIX + productId).then();
+    }
+
+    public Mono<Void> forgetPages(Collection<String> pageKeys) {
+        if (pageKeys.isEmpty()) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForZSet().remove(PAGE_KEYS, pageKeys.toArray()).then();
+    }
+}
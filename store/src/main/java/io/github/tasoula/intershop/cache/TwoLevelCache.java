@@ -0,0 +1,189 @@
+package io.github.tasoula.intershop.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Кеш из двух уровней: локальный Caffeine (L1) перед общим Redis-кешем (L2).
+ * Чтение сначала идёт в L1, промах - в Redis с сохранением найденного значения в L1.
+ * Изменения ({@code put} из @CachePut, удаление, очистка) выполняются в обоих уровнях, после чего
+ * остальные узлы получают событие инвалидации через {@link CacheInvalidationBus}. Заполнение кеша
+ * после промаха (загрузчики {@code get}/{@code retrieve}, {@link #putLoaded}) событий не публикует:
+ * значение совпадает с тем, что есть в БД, и копии на других узлах не устаревают.
+ * <p>
+ * L1 хранит значения по строковому ключу - так же, как ключ приходит в событии инвалидации.
+ */
+public class TwoLevelCache implements Cache {
+    private final Cache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final CacheInvalidationBus invalidationBus;
+
+    public TwoLevelCache(Cache remote,
+                         com.github.benmanes.caffeine.cache.Cache<String, Object> local,
+                         CacheInvalidationBus invalidationBus) {
+        this.remote = remote;
+        this.local = local;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object value = local.getIfPresent(localKey(key));
+        if (value != null) {
+            return new SimpleValueWrapper(value);
+        }
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper != null && wrapper.get() != null) {
+            local.put(localKey(key), wrapper.get());
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = (wrapper != null) ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = local.getIfPresent(localKey(key));
+        if (value != null) {
+            return (T) value;
+        }
+        T loaded = remote.get(key, valueLoader);
+        if (loaded != null) {
+            local.put(localKey(key), loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        Object value = local.getIfPresent(localKey(key));
+        if (value != null) {
+            return CompletableFuture.completedFuture(value); // Горячее значение - без сетевого запроса
+        }
+        CompletableFuture<?> future = remote.retrieve(key);
+        if (future == null) {
+            return null;
+        }
+        return future.thenApply(result -> {
+            Object loaded = (result instanceof ValueWrapper wrapper) ? wrapper.get() : result;
+            if (loaded != null) {
+                local.put(localKey(key), loaded);
+            }
+            return result;
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        Object value = local.getIfPresent(localKey(key));
+        if (value != null) {
+            return CompletableFuture.completedFuture((T) value);
+        }
+        return remote.retrieve(key, valueLoader)
+                .thenApply(loaded -> {
+                    if (loaded != null) {
+                        local.put(localKey(key), loaded);
+                    }
+                    return loaded;
+                });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        putLoaded(key, value);
+        invalidationBus.publish(getName(), key);
+    }
+
+    // Запись значения, загруженного после промаха: без события инвалидации для других узлов
+    public void putLoaded(Object key, Object value) {
+        remote.put(key, value);
+        if (value != null) {
+            local.put(localKey(key), value);
+        } else {
+            local.invalidate(localKey(key));
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        local.invalidate(localKey(key)); // Актуальное значение при следующем чтении возьмём из Redis
+        if (existing == null) {
+            invalidationBus.publish(getName(), key);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(localKey(key));
+        invalidationBus.publish(getName(), key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        local.invalidate(localKey(key));
+        boolean evicted = remote.evictIfPresent(key);
+        invalidationBus.publish(getName(), key);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        invalidationBus.publish(getName(), null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        local.invalidateAll();
+        boolean invalidated = remote.invalidate();
+        invalidationBus.publish(getName(), null);
+        return invalidated;
+    }
+
+    // Очистка только локального уровня (Redis при этом не трогаем)
+    public void evictLocal(Object key) {
+        local.invalidate(localKey(key));
+    }
+
+    // Ключ из события инвалидации приходит строкой - в том же виде, в каком ключи хранятся в L1
+    public void evictLocalByKeyString(String key) {
+        local.invalidate(key);
+    }
+
+    public void clearLocal() {
+        local.invalidateAll();
+    }
+
+    private static String localKey(Object key) {
+        return key.toString();
+    }
+}
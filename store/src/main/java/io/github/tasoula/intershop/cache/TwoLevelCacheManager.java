@@ -0,0 +1,79 @@
+package io.github.tasoula.intershop.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Оборачивает Redis CacheManager: для перечисленных кешей добавляет локальный уровень Caffeine,
+ * остальные кеши отдаются как есть. Подписывается на события инвалидации от других узлов.
+ */
+public class TwoLevelCacheManager implements CacheManager, InitializingBean, DisposableBean {
+    private final CacheManager remote;
+    private final Set<String> localCacheNames;
+    private final Duration localTtl;
+    private final long localMaxSize;
+    private final CacheInvalidationBus invalidationBus;
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+    private Disposable subscription;
+
+    public TwoLevelCacheManager(CacheManager remote, Set<String> localCacheNames, Duration localTtl, long localMaxSize,
+                                CacheInvalidationBus invalidationBus) {
+        this.remote = remote;
+        this.localCacheNames = localCacheNames;
+        this.localTtl = localTtl;
+        this.localMaxSize = localMaxSize;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        subscription = invalidationBus.subscribe(this::evictLocal);
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache remoteCache = remote.getCache(name);
+        if (remoteCache == null || !localCacheNames.contains(name)) {
+            return remoteCache;
+        }
+        return caches.computeIfAbsent(name, cacheName -> new TwoLevelCache(remoteCache, Caffeine.newBuilder()
+                .expireAfterWrite(localTtl)
+                .maximumSize(localMaxSize)
+                .build(), invalidationBus));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    // Событие от другого узла: удаляем только локальную копию, если кеш уже создан на этом узле
+    void evictLocal(String cacheName, String key) {
+        TwoLevelCache cache = caches.get(cacheName);
+        if (cache == null) {
+            return;
+        }
+        if (key == null) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocalByKeyString(key);
+        }
+    }
+}
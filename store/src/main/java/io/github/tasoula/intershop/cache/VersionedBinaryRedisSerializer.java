@@ -0,0 +1,148 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Компактный бинарный формат значений кешей товаров.
+ * Первый байт - версия формата. Значения без неё (JSON, записанный до перехода на бинарный формат)
+ * читаются прежним сериализатором, значения неизвестной версии считаются промахом кеша.
+ */
+public abstract class VersionedBinaryRedisSerializer<T> implements RedisSerializer<T> {
+    static final byte VERSION = 1;
+
+    private final RedisSerializer<?> legacySerializer;
+
+    protected VersionedBinaryRedisSerializer(RedisSerializer<?> legacySerializer) {
+        this.legacySerializer = legacySerializer;
+    }
+
+    protected abstract void write(DataOutputStream out, T value) throws IOException;
+
+    protected abstract T read(DataInputStream in) throws IOException;
+
+    protected abstract Class<T> type();
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            write(out, value);
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось сериализовать " + type().getSimpleName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == '{' || bytes[0] == '[') {
+            return deserializeLegacy(bytes);
+        }
+        if (bytes[0] != VERSION) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+            return read(in);
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось десериализовать " + type().getSimpleName(), e);
+        }
+    }
+
+    // Прежний формат, который не удалось прочитать, - просто промах: значение перезапишется
+    private T deserializeLegacy(byte[] bytes) {
+        try {
+            Object legacy = legacySerializer.deserialize(bytes);
+            return type().isInstance(legacy) ? type().cast(legacy) : null;
+        } catch (SerializationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return type();
+    }
+
+    protected static void writeProduct(DataOutputStream out, Product product) throws IOException {
+        writeUuid(out, product.getId());
+        writeString(out, product.getTitle());
+        writeString(out, product.getDescription());
+        writeString(out, product.getImgPath());
+        writeDecimal(out, product.getPrice());
+        out.writeInt(product.getStockQuantity());
+    }
+
+    protected static Product readProduct(DataInputStream in) throws IOException {
+        return new Product(readUuid(in), readString(in), readString(in), readString(in), readDecimal(in), in.readInt());
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    // Длина -1 - null (writeUTF не подходит: ограничение 64 КБ на строку)
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // Масштаб + unscaled value: без потерь и без текстового представления
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeByte(-1);
+            return;
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+        out.writeInt(value.scale());
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int length = in.readByte();
+        if (length < 0) {
+            return null;
+        }
+        byte[] unscaled = new byte[length];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), in.readInt());
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.tasoula.intershop.config;
+
+import io.github.tasoula.intershop.cache.CacheInvalidationBus;
+import io.github.tasoula.intershop.cache.TwoLevelCacheManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.RedisCacheManagerBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Set;
+
+@Configuration
+public class CacheConfig {
+
+    @Value("${cache.local.ttl:PT10S}")
+    private Duration localTtl;
+
+    @Value("${cache.local.max-size:10000}")
+    private long localMaxSize;
+
+    @Value("${cache.local.caches:products,products_all}")
+    private String[] localCaches;
+
+    @Value("${cache.invalidation.channel:cache:invalidate}")
+    private String invalidationChannel;
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(ReactiveStringRedisTemplate redisTemplate) {
+        return new CacheInvalidationBus(redisTemplate, invalidationChannel);
+    }
+
+    // Redis CacheManager собираем сами (с настройками кешей из RedisConfig) и оборачиваем локальным уровнем
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                             ObjectProvider<RedisCacheManagerBuilderCustomizer> customizers,
+                                             CacheInvalidationBus invalidationBus) {
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig());
+        customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.afterPropertiesSet(); // не бин, поэтому инициализируем кеши вручную
+
+        return new TwoLevelCacheManager(redisCacheManager, Set.of(localCaches), localTtl, localMaxSize, invalidationBus);
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.tasoula.intershop.config;
+
+import io.github.tasoula.intershop.service.CacheWarmUpService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+// Входит в группу readiness: узел принимает трафик только с прогретыми кешами
+@Component
+public class CacheWarmUpHealthIndicator implements HealthIndicator {
+    private final CacheWarmUpService cacheWarmUpService;
+
+    public CacheWarmUpHealthIndicator(CacheWarmUpService cacheWarmUpService) {
+        this.cacheWarmUpService = cacheWarmUpService;
+    }
+
+    @Override
+    public Health health() {
+        return cacheWarmUpService.isFinished()
+                ? Health.up().build()
+                : Health.outOfService().withDetail("cacheWarmUp", "in progress").build();
+    }
+}
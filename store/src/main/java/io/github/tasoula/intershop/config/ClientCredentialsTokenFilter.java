@@ -0,0 +1,118 @@
+package io.github.tasoula.intershop.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Добавляет к запросам токен client_credentials. Токен хранится в памяти и обновляется в фоне,
+ * когда до истечения остаётся меньше refreshSkew, - запрос ждёт сервер авторизации только при первом
+ * обращении или если токен уже истёк. Параллельные обновления объединяются в одно.
+ * <p>
+ * Новый токен менеджер выдаёт, только если сохранённый истекает в пределах clockSkew провайдера, поэтому
+ * clockSkew провайдера должен быть не меньше refreshSkew (см. {@link OAuth2ClientConfiguration}). При ответе 401
+ * сохранённый клиент удаляется из {@link ReactiveOAuth2AuthorizedClientService}, иначе менеджер вернул бы
+ * тот же отозванный токен.
+ */
+@Slf4j
+public class ClientCredentialsTokenFilter implements ExchangeFilterFunction {
+    // У client_credentials нет имени пользователя, поэтому используем system
+    private static final String PRINCIPAL = "system";
+
+    private final ReactiveOAuth2AuthorizedClientManager manager;
+    private final ReactiveOAuth2AuthorizedClientService authorizedClientService;
+    private final OAuth2AuthorizeRequest authorizeRequest;
+    private final Duration refreshSkew;
+    private final Clock clock;
+    private final AtomicReference<OAuth2AccessToken> token = new AtomicReference<>();
+    private final AtomicReference<Mono<OAuth2AccessToken>> refreshing = new AtomicReference<>();
+
+    public ClientCredentialsTokenFilter(ReactiveOAuth2AuthorizedClientManager manager,
+                                        ReactiveOAuth2AuthorizedClientService authorizedClientService,
+                                        String registrationId, Duration refreshSkew, Clock clock) {
+        this.manager = manager;
+        this.authorizedClientService = authorizedClientService;
+        this.authorizeRequest = OAuth2AuthorizeRequest.withClientRegistrationId(registrationId)
+                .principal(PRINCIPAL)
+                .build();
+        this.refreshSkew = refreshSkew;
+        this.clock = clock;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(this::currentToken)
+                .flatMap(accessToken -> next.exchange(ClientRequest.from(request)
+                                .headers(headers -> headers.setBearerAuth(accessToken.getTokenValue()))
+                                .build())
+                        .flatMap(response -> response.statusCode().value() == HttpStatus.UNAUTHORIZED.value()
+                                ? dropToken(accessToken).thenReturn(response)
+                                : Mono.just(response)));
+    }
+
+    // Токен отозван или сервер авторизации перезапущен: удаляем сохранённый клиент, чтобы менеджер
+    // запросил новый токен, и только потом сбрасываем локальный - следующий запрос получит новый
+    private Mono<Void> dropToken(OAuth2AccessToken accessToken) {
+        return authorizedClientService.removeAuthorizedClient(authorizeRequest.getClientRegistrationId(), PRINCIPAL)
+                .onErrorResume(e -> {
+                    log.warn("Не удалось удалить сохранённый токен {}: {}", authorizeRequest.getClientRegistrationId(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then(Mono.fromRunnable(() -> token.compareAndSet(accessToken, null)));
+    }
+
+    private Mono<OAuth2AccessToken> currentToken() {
+        OAuth2AccessToken current = token.get();
+        Instant now = clock.instant();
+        if (current == null || isExpired(current, now)) {
+            return refresh();
+        }
+        if (current.getExpiresAt() != null && now.plus(refreshSkew).isAfter(current.getExpiresAt())) {
+            refresh().subscribe(
+                    refreshed -> log.debug("Токен {} обновлён заранее", authorizeRequest.getClientRegistrationId()),
+                    e -> log.warn("Не удалось заранее обновить токен, используем текущий: {}", e.getMessage()));
+        }
+        return Mono.just(current);
+    }
+
+    private static boolean isExpired(OAuth2AccessToken accessToken, Instant now) {
+        return accessToken.getExpiresAt() != null && !now.isBefore(accessToken.getExpiresAt());
+    }
+
+    // Одно обращение к серверу авторизации на все одновременные запросы
+    private Mono<OAuth2AccessToken> refresh() {
+        while (true) {
+            Mono<OAuth2AccessToken> inFlight = refreshing.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            Sinks.One<OAuth2AccessToken> result = Sinks.one();
+            Mono<OAuth2AccessToken> shared = result.asMono();
+            if (refreshing.compareAndSet(null, shared)) {
+                manager.authorize(authorizeRequest)
+                        .map(OAuth2AuthorizedClient::getAccessToken)
+                        .doOnNext(token::set)
+                        .doFinally(signal -> refreshing.compareAndSet(shared, null))
+                        .subscribe(result::tryEmitValue, result::tryEmitError,
+                                () -> result.tryEmitError(new IllegalStateException(
+                                        "Клиент " + authorizeRequest.getClientRegistrationId() + " не авторизован")));
+                return shared;
+            }
+        }
+    }
+}
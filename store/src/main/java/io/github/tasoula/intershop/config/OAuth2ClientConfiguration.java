@@ -1,5 +1,6 @@
 package io.github.tasoula.intershop.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.oauth2.client.AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager;
@@ -8,20 +9,25 @@ import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClient
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
 
+import java.time.Duration;
+
 @Configuration
 public class OAuth2ClientConfiguration {
 
+    // Менеджер выдаёт новый токен, только если текущий истекает в пределах clockSkew - он совпадает с
+    // refreshSkew ClientCredentialsTokenFilter, иначе фоновое обновление получало бы тот же токен
     @Bean
     ReactiveOAuth2AuthorizedClientManager auth2AuthorizedClientManager(
             ReactiveClientRegistrationRepository clientRegistrationRepository,
-            ReactiveOAuth2AuthorizedClientService authorizedClientService
+            ReactiveOAuth2AuthorizedClientService authorizedClientService,
+            @Value("${balance.service.token-refresh-skew:PT60S}") Duration tokenRefreshSkew
     ) {
         AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager manager =
                 new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager(clientRegistrationRepository, authorizedClientService);
 
         manager.setAuthorizedClientProvider(ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
-                .clientCredentials()
-                .refreshToken()
+                .clientCredentials(builder -> builder.clockSkew(tokenRefreshSkew))
+                .refreshToken(builder -> builder.clockSkew(tokenRefreshSkew))
                 .build()
         );
 
@@ -1,6 +1,10 @@
 package io.github.tasoula.intershop.config;
 
+import io.github.tasoula.intershop.cache.CachedPageBinaryRedisSerializer;
+import io.github.tasoula.intershop.cache.JsonFallbackRedisSerializer;
+import io.github.tasoula.intershop.cache.ProductBinaryRedisSerializer;
 import io.github.tasoula.intershop.model.Product;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.cache.RedisCacheManagerBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,6 +14,7 @@ import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
@@ -17,6 +22,15 @@ import java.time.temporal.ChronoUnit;
 
 @Configuration
 public class RedisConfig {
+    // Тот же TTL ProductPageCache использует для расчёта раннего обновления страниц
+    @Value("${cache.products-all.ttl:PT3M}")
+    private Duration productsAllTtl;
+
+    // json - прежний формат, binary - компактный бинарный. Переключение в обе стороны без сброса кеша:
+    // каждый формат читает значения другого или считает их промахом
+    @Value("${cache.serializer:json}")
+    private String serializer;
+
     @Bean
     public RedisCacheManagerBuilderCustomizer productsCacheCustomizer() {
         return builder -> builder
@@ -25,21 +39,40 @@ public class RedisConfig {
                         RedisCacheConfiguration.defaultCacheConfig()
                                 .entryTtl(Duration.of(3, ChronoUnit.MINUTES))
                                 .serializeValuesWith(
-                                        RedisSerializationContext.SerializationPair.fromSerializer(
-                                                new Jackson2JsonRedisSerializer<>(Product.class)
-                                        )
+                                        RedisSerializationContext.SerializationPair.fromSerializer(productSerializer())
                                 )
                 ).withCacheConfiguration(
                         "products_all",
+                        RedisCacheConfiguration.defaultCacheConfig()
+                                .entryTtl(productsAllTtl)
+                                .serializeValuesWith(
+                                        RedisSerializationContext.SerializationPair.fromSerializer(pageSerializer())
+                                )
+                ).withCacheConfiguration(
+                        "products_count",
                         RedisCacheConfiguration.defaultCacheConfig()
                                 .entryTtl(Duration.ofMinutes(3))
                                 .serializeValuesWith(
                                         RedisSerializationContext.SerializationPair.fromSerializer(
-                                                new GenericJackson2JsonRedisSerializer()
+                                                new Jackson2JsonRedisSerializer<>(Long.class)
                                         )
                                 )
                 );
     }
-}
 
+    private RedisSerializer<?> productSerializer() {
+        return isBinary()
+                ? new ProductBinaryRedisSerializer()
+                : new JsonFallbackRedisSerializer<>(new Jackson2JsonRedisSerializer<>(Product.class));
+    }
 
+    private RedisSerializer<?> pageSerializer() {
+        return isBinary()
+                ? new CachedPageBinaryRedisSerializer()
+                : new JsonFallbackRedisSerializer<>(new GenericJackson2JsonRedisSerializer());
+    }
+
+    private boolean isBinary() {
+        return "binary".equalsIgnoreCase(serializer);
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.tasoula.intershop.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.tasoula.intershop.exceptions.PaymentException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+
+/**
+ * Защита от деградации сервиса платежей: circuit breaker перестаёт отправлять запросы, пока сервис
+ * отвечает ошибками или медленно, bulkhead ограничивает число одновременных вызовов. Запросы баланса
+ * и оплаты изолированы друг от друга - просмотр корзин не занимает места, нужные для оформления заказов.
+ */
+@Configuration
+public class ResilienceConfig {
+
+    @Value("${balance.service.circuit-breaker.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+
+    @Value("${balance.service.circuit-breaker.slow-call-duration-threshold:PT2S}")
+    private Duration slowCallDurationThreshold;
+
+    @Value("${balance.service.circuit-breaker.slow-call-rate-threshold:50}")
+    private float slowCallRateThreshold;
+
+    @Value("${balance.service.circuit-breaker.sliding-window-size:20}")
+    private int slidingWindowSize;
+
+    @Value("${balance.service.circuit-breaker.minimum-number-of-calls:10}")
+    private int minimumNumberOfCalls;
+
+    @Value("${balance.service.circuit-breaker.wait-duration-in-open-state:PT10S}")
+    private Duration waitDurationInOpenState;
+
+    @Value("${balance.service.circuit-breaker.permitted-calls-in-half-open-state:3}")
+    private int permittedCallsInHalfOpenState;
+
+    @Value("${balance.service.bulkhead.balance-max-concurrent-calls:20}")
+    private int balanceMaxConcurrentCalls;
+
+    @Value("${balance.service.bulkhead.payment-max-concurrent-calls:10}")
+    private int paymentMaxConcurrentCalls;
+
+    @Bean
+    CircuitBreakerRegistry circuitBreakerRegistry() {
+        return CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(slowCallDurationThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                // Отказ в оплате и неизвестный счёт - ответы исправного сервиса, переполненный bulkhead - наша очередь
+                .ignoreExceptions(PaymentException.class, NoSuchElementException.class, BulkheadFullException.class)
+                .build());
+    }
+
+    @Bean
+    CircuitBreaker balanceCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return circuitBreakerRegistry.circuitBreaker("balance");
+    }
+
+    @Bean
+    CircuitBreaker paymentCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return circuitBreakerRegistry.circuitBreaker("payment");
+    }
+
+    // Без ожидания: при заполненном bulkhead запрос сразу получает отказ
+    @Bean
+    Bulkhead balanceBulkhead() {
+        return Bulkhead.of("balance", bulkheadConfig(balanceMaxConcurrentCalls));
+    }
+
+    @Bean
+    Bulkhead paymentBulkhead() {
+        return Bulkhead.of("payment", bulkheadConfig(paymentMaxConcurrentCalls));
+    }
+
+    private static BulkheadConfig bulkheadConfig(int maxConcurrentCalls) {
+        return BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+    }
+}
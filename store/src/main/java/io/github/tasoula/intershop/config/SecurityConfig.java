@@ -35,6 +35,8 @@ public class SecurityConfig {
                                     .pathMatchers("/cart/**", "/orders/**").hasRole("USER")
                                     .pathMatchers("/catalog/products/new").hasRole("ADMIN")
                                     .pathMatchers("/css/**", "/js/**").permitAll()
+                                    .pathMatchers("/actuator/health/**").permitAll()
+                                    .pathMatchers("/actuator/metrics/**").hasRole("ADMIN")
                                     .pathMatchers("/catalog/**", "/login", "/register").permitAll()
                                     .anyExchange().authenticated();
                         }
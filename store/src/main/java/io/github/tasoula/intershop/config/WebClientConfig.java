@@ -1,20 +1,92 @@
 package io.github.tasoula.intershop.config;
 
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebClientConfig {
+    // Идентификаторы в путях (/balance/{userId}) заменяются шаблоном, чтобы не плодить метрики на каждого пользователя
+    private static final String UUID_PATH_SEGMENT = "/[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}";
 
     @Value("${balance.service.url}")
     private String balanceServiceUrl;
 
+    @Value("${balance.service.registration-id:store}")
+    private String registrationId;
+
+    @Value("${balance.service.token-refresh-skew:PT60S}")
+    private Duration tokenRefreshSkew;
+
+    @Value("${balance.service.pool.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${balance.service.pool.pending-acquire-max-count:100}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${balance.service.pool.pending-acquire-timeout:PT2S}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${balance.service.pool.max-idle-time:PT30S}")
+    private Duration maxIdleTime;
+
+    @Value("${balance.service.pool.max-life-time:PT5M}")
+    private Duration maxLifeTime;
+
+    @Value("${balance.service.pool.evict-interval:PT30S}")
+    private Duration evictInterval;
+
+    @Value("${balance.service.timeouts.connect:PT2S}")
+    private Duration connectTimeout;
+
+    @Value("${balance.service.timeouts.response:PT5S}")
+    private Duration responseTimeout;
+
+    @Value("${balance.service.timeouts.read:PT5S}")
+    private Duration readTimeout;
+
+    // Отдельный пул соединений к сервису платежей: ограниченный размер и очередь ожидания,
+    // простаивающие соединения закрываются в фоне. Метрики пула - reactor.netty.connection.provider.*
+    @Bean(destroyMethod = "dispose")
+    ConnectionProvider balanceConnectionProvider() {
+        return ConnectionProvider.builder("payment-service")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInterval)
+                .metrics(true)
+                .build();
+    }
+
+    // Токен сервиса платежей добавляется фильтром, сервисы его не запрашивают
     @Bean
-    WebClient balanceWebClient(){
-        return WebClient.builder().baseUrl(balanceServiceUrl).build();
+    WebClient balanceWebClient(ConnectionProvider balanceConnectionProvider, ReactiveOAuth2AuthorizedClientManager manager,
+                                ReactiveOAuth2AuthorizedClientService authorizedClientService){
+        HttpClient httpClient = HttpClient.create(balanceConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout)
+                .doOnConnected(connection -> connection
+                        .addHandlerLast(new ReadTimeoutHandler(readTimeout.toMillis(), TimeUnit.MILLISECONDS)))
+                .metrics(true, uri -> uri.replaceAll(UUID_PATH_SEGMENT, "/{id}"));
+
+        return WebClient.builder()
+                .baseUrl(balanceServiceUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(new ClientCredentialsTokenFilter(manager, authorizedClientService, registrationId, tokenRefreshSkew, Clock.systemUTC()))
+                .build();
     }
 }
-
@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.util.Optional;
 import java.util.UUID;
 
 
@@ -32,17 +33,21 @@ public class CartController {
                 .switchIfEmpty(Mono.just(new User()))
                 .flatMap(user -> {
                     UUID userId = user.getId();
-                    return service.findByUserId(userId) // Assuming findByUserId returns a Flux<ProductDto> or a Mono<List<ProductDto>>
-                            .collectList() // collect all items into list
-                            .flatMap(items -> {
-                                model.addAttribute("items", items);
-                                return service.calculateTotalPriceByUserId(userId) // Assuming calculateTotalPriceByUserId returns a Mono<BigDecimal>
-                                        .flatMap(total -> {
-                                            model.addAttribute("total", total);
-                                            model.addAttribute("empty", items.isEmpty());
-                                            model.addAttribute("isAvailable", service.isAvailable(userId));
-                                            return Mono.just("cart.html"); // Return the view name as a Mono
-                                        });
+                    return service.getCartView(userId)
+                            .map(cart -> {
+                                model.addAttribute("items", cart.getItems());
+                                model.addAttribute("total", cart.getTotal());
+                                model.addAttribute("empty", cart.isEmpty());
+                                // Ключ оформления: повторная отправка формы не создаст второй заказ
+                                model.addAttribute("checkoutKey", UUID.randomUUID().toString());
+                                // Пустой ответ - сервис платежей недоступен, показываем "доступность неизвестна"
+                                Mono<Optional<Boolean>> availability = service.isAvailable(userId, cart.getTotal())
+                                        .map(Optional::of)
+                                        .defaultIfEmpty(Optional.empty())
+                                        .cache();
+                                model.addAttribute("isAvailable", availability.map(available -> available.orElse(false)));
+                                model.addAttribute("availabilityUnknown", availability.map(Optional::isEmpty));
+                                return "cart.html";
                             });
                 });
     }
@@ -73,7 +78,8 @@ public class CartController {
                 .switchIfEmpty(Mono.just(new User()))
                 .flatMap(user -> {
                     return service.isAvailable(user.getId())
-                            .map(ResponseEntity::ok);
+                            .map(ResponseEntity::ok)
+                            .defaultIfEmpty(ResponseEntity.noContent().build()); // доступность неизвестна
                 });
     }
 
@@ -2,6 +2,7 @@ package io.github.tasoula.intershop.controller;
 
 
 import io.github.tasoula.intershop.exceptions.PaymentException;
+import io.github.tasoula.intershop.exceptions.PaymentServiceUnavailableException;
 import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.http.HttpStatus;
@@ -54,6 +55,14 @@ public class ExceptionController {
                 });
     }
 
+    @ExceptionHandler({PaymentServiceUnavailableException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Mono<String> handlePaymentServiceUnavailableException(PaymentServiceUnavailableException e, Model model) {
+        return Mono.just("exceptions/service-unavailable.html")
+                .doOnNext(item -> {
+                    model.addAttribute("exception", e);
+                });
+    }
 
     @ExceptionHandler({Exception.class})
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -1,44 +1,82 @@
 package io.github.tasoula.intershop.controller;
 
+import io.github.tasoula.intershop.dto.OrderCursor;
+import io.github.tasoula.intershop.exceptions.OutOfStockException;
 import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
 import io.github.tasoula.intershop.model.User;
+import io.github.tasoula.intershop.service.CheckoutIdempotencyService;
 import io.github.tasoula.intershop.service.OrderService;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 
 @Controller
 @RequestMapping("/orders")
 public class OrderController {
+    private static final List<Integer> PAGE_SIZES = List.of(5, 10, 20, 50);
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
     private final OrderService service;
+    private final CheckoutIdempotencyService checkoutIdempotency;
 
-    public OrderController(OrderService service) {
+    public OrderController(OrderService service, CheckoutIdempotencyService checkoutIdempotency) {
         this.service = service;
+        this.checkoutIdempotency = checkoutIdempotency;
     }
 
     @GetMapping
     public Mono<String> show(@AuthenticationPrincipal Mono<UserDetails> userDetailsMono,
+                             @RequestParam(name = "pageSize", required = false, defaultValue = "10") Integer pageSize,
+                             @RequestParam(name = "after", required = false) String after,
+                             @RequestParam(name = "before", required = false) String before,
                              Model model) {
+        int size = pageSize(pageSize);
+        OrderCursor cursor = decodeCursor(after != null ? after : before);
+        OrderCursor afterCursor = (after != null) ? cursor : null;
+        OrderCursor beforeCursor = (after != null) ? null : cursor;
         return userDetailsMono.cast(User.class)
                 .switchIfEmpty(Mono.just(new User()))
-                .flatMap(user -> {
-                    UUID userId = user.getId();
-
-                    return service.getByUserId(userId)
-                            .collectList()
-                            .flatMap(items -> {
-                                model.addAttribute("orders", items);
-                                return Mono.just("orders.html");
-                            });
+                .flatMap(user -> service.getByUserId(user.getId(), afterCursor, beforeCursor, size))
+                .map(page -> {
+                    model.addAttribute("orders", page.getSlice().getContent());
+                    model.addAttribute("paging", page.getSlice());
+                    model.addAttribute("previousCursor", page.getPreviousCursor());
+                    model.addAttribute("nextCursor", page.getNextCursor());
+                    return "orders.html";
                 });
     }
 
+    // Размер страницы - одно из значений списка на странице; произвольный приводится к ближайшему меньшему
+    static int pageSize(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return PAGE_SIZES.stream()
+                .filter(size -> size <= requested)
+                .reduce((smaller, larger) -> larger)
+                .orElse(PAGE_SIZES.getFirst());
+    }
+
+    // Испорченный курсор - показываем первую страницу
+    private OrderCursor decodeCursor(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return OrderCursor.decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     @GetMapping("{id}")
     public Mono<String> showOrder(@PathVariable("id") UUID id,
                                   @RequestParam(name = "newOrder", required = false, defaultValue = "false") boolean isNew,
@@ -58,13 +96,22 @@ public class OrderController {
 
     @PostMapping("new")
     public Mono<String> createOrder(@AuthenticationPrincipal Mono<UserDetails> userDetailsMono,
+                                    ServerWebExchange exchange,
                                     Model model) {
+        // Ключ оформления приходит из скрытого поля формы корзины
+        Mono<String> idempotencyKey = exchange.getFormData()
+                .mapNotNull(form -> form.getFirst("idempotencyKey"))
+                .defaultIfEmpty("");
         return userDetailsMono.cast(User.class)
                 .switchIfEmpty(Mono.just(new User()))
-                .flatMap(user -> {
-                    return service.createOrder(user.getId())
+                .zipWith(idempotencyKey)
+                .flatMap(tuple -> {
+                    UUID userId = tuple.getT1().getId();
+                    return checkoutIdempotency.once(userId, tuple.getT2(), () -> service.createOrder(userId))
                             .map(orderId -> "redirect:/orders/" + orderId + "?newOrder=true")
-                            .switchIfEmpty(Mono.just("redirect:/cart/items"));
+                            .switchIfEmpty(Mono.just("redirect:/cart/items"))
+                            // Товар раскупили, пока пользователь оформлял заказ, - заказ отменён, корзина на месте
+                            .onErrorResume(OutOfStockException.class, e -> Mono.just("redirect:/cart/items"));
                 });
     }
 }
@@ -1,6 +1,9 @@
 package io.github.tasoula.intershop.controller;
 
+import io.github.tasoula.intershop.dto.CatalogCursor;
+import io.github.tasoula.intershop.dto.CursorPage;
 import io.github.tasoula.intershop.dto.ProductDto;
+import io.github.tasoula.intershop.enums.CatalogSort;
 import io.github.tasoula.intershop.model.User;
 import io.github.tasoula.intershop.service.ProductService;
 import lombok.extern.slf4j.Slf4j;
@@ -27,9 +30,6 @@ import java.util.UUID;
 @RequestMapping("/catalog")
 public class ProductController {
 
-    public static final String TITLE = "title";
-    public static final String PRICE = "price";
-
     private final ProductService service;
 
     public ProductController(ProductService service) {
@@ -50,29 +50,41 @@ public class ProductController {
             @RequestParam(name = "sort", required = false, defaultValue = "NO") String sort,
             @RequestParam(name = "pageSize", required = false, defaultValue = "10") Integer pageSize,
             @RequestParam(name = "pageNumber", required = false, defaultValue = "0") Integer pageNumber,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "before", required = false) String before,
             Model model,
             ServerWebExchange exchange) { // ServerWebExchange для получения доступа к WebFlux контексту
 
         if (pageSize <= 0) pageSize = 10;
         if (pageNumber < 0) pageNumber = 0;
 
-        Sort sortObj = switch (sort) {
-            case "ALPHA" -> Sort.by(TITLE).ascending();
-            case "PRICE" -> Sort.by(PRICE).ascending();
-            default -> Sort.unsorted();
-        };
+        CatalogSort catalogSort = CatalogSort.of(sort);
+        Sort sortObj = catalogSort.toSort();
+
+        // Keyset-пагинация работает для каталога без поиска; поиск и pageNumber - постраничный режим OFFSET/LIMIT
+        boolean keyset = search == null || search.isEmpty();
+        CatalogCursor cursor = keyset ? decodeCursor(after != null ? after : before, catalogSort) : null;
 
         Pageable pageable = PageRequest.of(pageNumber, pageSize, sortObj);
+        int size = pageSize;
 
         return userDetailsMono.cast(User.class)
                 .switchIfEmpty(Mono.just(new User()))
                 .flatMap(user -> {
-                    return service.findAll(user.getId(), search, pageable)
+                    Mono<CursorPage<ProductDto>> pageMono = (cursor != null)
+                            ? service.findAllByCursor(user.getId(), after != null ? cursor : null, after != null ? null : cursor, size)
+                            : service.findAll(user.getId(), search, pageable)
+                                    .map(page -> keyset
+                                            ? CursorPage.of(catalogSort, page)
+                                            : new CursorPage<ProductDto>(page, null, null));
+                    return pageMono
                             .doOnNext(productPage -> {
                                 model.addAttribute("search", search);
                                 model.addAttribute("sort", sort);
-                                model.addAttribute("paging", productPage);
-                                model.addAttribute("items", productPage.getContent());
+                                model.addAttribute("paging", productPage.getSlice());
+                                model.addAttribute("items", productPage.getSlice().getContent());
+                                model.addAttribute("previousCursor", productPage.getPreviousCursor());
+                                model.addAttribute("nextCursor", productPage.getNextCursor());
                             })
                             .thenReturn("catalog.html");
                 })
@@ -85,6 +97,19 @@ public class ProductController {
 
     }
 
+    // Испорченный курсор или курсор от другой сортировки игнорируется - показываем первую страницу
+    private CatalogCursor decodeCursor(String token, CatalogSort sort) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            CatalogCursor cursor = CatalogCursor.decode(token);
+            return cursor.getSort() == sort ? cursor : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     @GetMapping("items/{id}")
     public Mono<String> showItemById(@AuthenticationPrincipal Mono<UserDetails> userDetailsMono, @PathVariable("id") UUID id, Model model) {
         return userDetailsMono.cast(User.class)
@@ -1,6 +1,8 @@
 package io.github.tasoula.intershop.dao;
 
+import io.github.tasoula.intershop.dto.ProductDto;
 import io.github.tasoula.intershop.model.CartItem;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.data.repository.query.Param;
@@ -9,16 +11,48 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.UUID;
 
 @Repository
 public interface CartItemRepository extends R2dbcRepository<CartItem, UUID> {
     Mono<CartItem> findByUserIdAndProductId(UUID userId, UUID id);
+    Flux<CartItem> findByUserIdAndProductIdIn(UUID userId, Collection<UUID> productIds);
     Flux<CartItem> findByUserId(UUID userId);
     Flux<CartItem> findByUserIdOrderByCreatedAtDesc(UUID userId);
 
     Mono<Void> deleteByUserIdAndProductId(UUID userId, UUID productId);
 
+    // Увеличение количества одним запросом: вставка или обновление строки с ограничением по остатку товара.
+    // Пусто - товара нет
+    @Query("""
+            INSERT INTO t_cart_items AS ci (user_id, product_id, quantity)
+            SELECT :userId, p.id, LEAST(:change, p.stock_quantity) FROM t_products p WHERE p.id = :productId
+            ON CONFLICT (user_id, product_id) DO UPDATE
+                SET quantity = LEAST(ci.quantity + :change,
+                                     (SELECT stock_quantity FROM t_products WHERE id = EXCLUDED.product_id))
+            RETURNING quantity
+            """)
+    Mono<Integer> addQuantity(@Param("userId") UUID userId, @Param("productId") UUID productId, @Param("change") int change);
+
+    // Уменьшение количества одним запросом: строка обновляется или, если количество дошло до нуля, удаляется.
+    // Условия взаимоисключающие, обе части видят один и тот же снимок строки
+    @Query("""
+            WITH updated AS (
+                UPDATE t_cart_items ci
+                SET quantity = LEAST(ci.quantity + :change, p.stock_quantity)
+                FROM t_products p
+                WHERE p.id = ci.product_id AND ci.user_id = :userId AND ci.product_id = :productId
+                  AND ci.quantity + :change > 0
+                RETURNING ci.quantity
+            ), deleted AS (
+                DELETE FROM t_cart_items
+                WHERE user_id = :userId AND product_id = :productId AND quantity + :change <= 0
+            )
+            SELECT COALESCE((SELECT quantity FROM updated), 0)
+            """)
+    Mono<Integer> subtractQuantity(@Param("userId") UUID userId, @Param("productId") UUID productId, @Param("change") int change);
+
     @Query("""
             SELECT SUM(p.price * ci.quantity) 
             FROM t_cart_items ci JOIN t_products p ON ci.product_id = p.id 
@@ -26,7 +60,33 @@ public interface CartItemRepository extends R2dbcRepository<CartItem, UUID> {
             """)
     Mono<BigDecimal> calculateTotalPriceByUserId(@Param("userId") UUID userId);
 
+    // Страница корзины одним запросом: позиции вместе с данными товаров, новые - первыми
+    @Query("""
+            SELECT p.id, p.title, p.description, p.price, p.stock_quantity, ci.quantity
+            FROM t_cart_items ci JOIN t_products p ON ci.product_id = p.id
+            WHERE ci.user_id = :userId
+            ORDER BY ci.created_at DESC
+            """)
+    Flux<ProductDto> findCartProductsByUserId(@Param("userId") UUID userId);
+
     Mono<Boolean> existsByUserId(UUID userId);
 
     Mono<Void> deleteByUserId(UUID userId);
+
+    // Запись корзины из Redis одним запросом: массивы позиций разворачиваются через unnest
+    @Modifying
+    @Query("""
+            INSERT INTO t_cart_items (user_id, product_id, quantity, created_at)
+            SELECT :userId, item.product_id, item.quantity, to_timestamp(item.added_at / 1000.0)
+            FROM unnest(:productIds, :quantities, :addedAt) AS item(product_id, quantity, added_at)
+            ON CONFLICT (user_id, product_id) DO UPDATE SET quantity = EXCLUDED.quantity
+            """)
+    Mono<Integer> upsertAll(@Param("userId") UUID userId,
+                            @Param("productIds") UUID[] productIds,
+                            @Param("quantities") Integer[] quantities,
+                            @Param("addedAt") Long[] addedAt);
+
+    @Modifying
+    @Query("DELETE FROM t_cart_items WHERE user_id = :userId AND product_id <> ALL(:productIds)")
+    Mono<Integer> deleteByUserIdAndProductIdNotIn(@Param("userId") UUID userId, @Param("productIds") UUID[] productIds);
 }
@@ -1,7 +1,9 @@
 package io.github.tasoula.intershop.dao;
 
 import io.github.tasoula.intershop.model.OrderItem;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
@@ -10,5 +12,14 @@ import java.util.UUID;
 @Repository
 public interface OrderItemRepository extends R2dbcRepository<OrderItem, UUID> {
     Flux<OrderItem> findByOrderId(UUID orderId);
+
+    // Самые заказываемые товары (по суммарному количеству) - для прогрева кеша
+    @Query("""
+            SELECT product_id FROM t_order_items
+            GROUP BY product_id
+            ORDER BY SUM(quantity) DESC
+            LIMIT :limit
+            """)
+    Flux<UUID> findMostOrderedProductIds(@Param("limit") int limit);
 }
 
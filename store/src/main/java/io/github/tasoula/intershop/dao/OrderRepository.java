@@ -1,14 +1,110 @@
 package io.github.tasoula.intershop.dao;
 
 
+import io.github.tasoula.intershop.dto.OrderSnapshotRow;
+import io.github.tasoula.intershop.enums.OrderStatus;
 import io.github.tasoula.intershop.model.Order;
+import io.github.tasoula.intershop.model.Product;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Repository
 public interface OrderRepository extends R2dbcRepository<Order, UUID> {
     Flux<Order> findByUserId(UUID userId);
+
+    // История заказов читается только из t_orders: позиции, названия и сумма - в снимке, записанном при оформлении.
+    // Keyset-пагинация по (created_at, id) от новых к старым (индекс idx_orders_user_created)
+    @Query("""
+            SELECT id AS order_id, status, created_at, snapshot::text AS snapshot FROM t_orders
+            WHERE user_id = :userId
+            ORDER BY created_at DESC, id DESC
+            LIMIT :limit
+            """)
+    Flux<OrderSnapshotRow> findSnapshotsByUserId(@Param("userId") UUID userId, @Param("limit") int limit);
+
+    @Query("""
+            SELECT id AS order_id, status, created_at, snapshot::text AS snapshot FROM t_orders
+            WHERE user_id = :userId AND (created_at, id) < (:createdAt, :id)
+            ORDER BY created_at DESC, id DESC
+            LIMIT :limit
+            """)
+    Flux<OrderSnapshotRow> findSnapshotsByUserIdBefore(@Param("userId") UUID userId,
+                                                       @Param("createdAt") LocalDateTime createdAt,
+                                                       @Param("id") UUID id,
+                                                       @Param("limit") int limit);
+
+    // Строки возвращаются в обратном порядке - от курсора к новым заказам
+    @Query("""
+            SELECT id AS order_id, status, created_at, snapshot::text AS snapshot FROM t_orders
+            WHERE user_id = :userId AND (created_at, id) > (:createdAt, :id)
+            ORDER BY created_at, id
+            LIMIT :limit
+            """)
+    Flux<OrderSnapshotRow> findSnapshotsByUserIdAfter(@Param("userId") UUID userId,
+                                                      @Param("createdAt") LocalDateTime createdAt,
+                                                      @Param("id") UUID id,
+                                                      @Param("limit") int limit);
+
+    @Query("SELECT id AS order_id, status, created_at, snapshot::text AS snapshot FROM t_orders WHERE id = :id")
+    Mono<OrderSnapshotRow> findSnapshotById(@Param("id") UUID id);
+
+    // Переход статуса только из ожидаемого: повторная обработка одного платежа ничего не меняет
+    @Modifying
+    @Query("UPDATE t_orders SET status = :to WHERE id = :id AND status = :from")
+    Mono<Integer> updateStatus(@Param("id") UUID id, @Param("from") OrderStatus from, @Param("to") OrderStatus to);
+
+    // Оформление заказа одним запросом: корзина переносится в позиции заказа по текущим ценам, товар списывается
+    // (строки блокируются в порядке id), сумма считается в БД, заказ со снимком для истории заказов и платёж
+    // для PaymentDispatcher записываются. Возвращает обновлённые строки товаров; пустой результат - товара не хватило,
+    // заказ не создан, но уже сделанные списания остались - транзакцию нужно откатить
+    @Query("""
+            WITH cart AS (
+                SELECT product_id, quantity FROM t_cart_items
+                WHERE user_id = :userId AND quantity > 0
+            ),
+            locked AS (
+                SELECT p.id FROM t_products p
+                WHERE p.id IN (SELECT product_id FROM cart)
+                ORDER BY p.id
+                FOR UPDATE
+            ),
+            stock AS (
+                UPDATE t_products p SET stock_quantity = p.stock_quantity - c.quantity
+                FROM cart c JOIN locked l ON l.id = c.product_id
+                WHERE p.id = c.product_id AND p.stock_quantity >= c.quantity
+                RETURNING p.id, p.title, p.description, p.image_path, p.price, p.stock_quantity, c.quantity AS ordered
+            ),
+            new_order AS (
+                INSERT INTO t_orders (id, user_id, total_amount, status, snapshot)
+                SELECT :orderId, :userId, SUM(s.price * s.ordered), 'PENDING_PAYMENT',
+                       jsonb_build_object(
+                           'totalAmount', SUM(s.price * s.ordered),
+                           'items', jsonb_agg(jsonb_build_object(
+                               'id', s.id, 'title', s.title, 'quantity', s.ordered, 'price', s.price) ORDER BY s.id))
+                FROM stock s
+                HAVING COUNT(*) > 0 AND COUNT(*) = (SELECT COUNT(*) FROM cart)
+                RETURNING id, user_id, total_amount
+            ),
+            items AS (
+                INSERT INTO t_order_items (order_id, product_id, quantity, price_at_time_of_order)
+                SELECT o.id, s.id, s.ordered, s.price
+                FROM new_order o CROSS JOIN stock s
+            ),
+            outbox AS (
+                INSERT INTO t_payment_outbox (order_id, user_id, amount)
+                SELECT id, user_id, total_amount FROM new_order
+            )
+            SELECT s.id, s.title, s.description, s.image_path, s.price, s.stock_quantity
+            FROM stock s
+            WHERE EXISTS (SELECT 1 FROM new_order)
+            """)
+    Flux<Product> checkout(@Param("orderId") UUID orderId, @Param("userId") UUID userId);
 }
@@ -0,0 +1,52 @@
+package io.github.tasoula.intershop.dao;
+
+import io.github.tasoula.intershop.model.PaymentOutbox;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+@Repository
+public interface PaymentOutboxRepository extends R2dbcRepository<PaymentOutbox, UUID> {
+
+    // Захват пачки платежей к отправке: строки "арендуются" на leaseSeconds (сдвигом next_attempt_at),
+    // поэтому другие узлы их не возьмут, а транзакция не держится открытой во время вызова сервиса платежей
+    @Query("""
+            UPDATE t_payment_outbox SET next_attempt_at = LOCALTIMESTAMP + make_interval(secs => :leaseSeconds)
+            WHERE id IN (
+                SELECT id FROM t_payment_outbox
+                WHERE status = 'NEW' AND next_attempt_at <= LOCALTIMESTAMP
+                ORDER BY next_attempt_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED)
+            RETURNING *
+            """)
+    Flux<PaymentOutbox> claimBatch(@Param("limit") int limit, @Param("leaseSeconds") long leaseSeconds);
+
+    @Modifying
+    @Query("UPDATE t_payment_outbox SET status = 'DONE', attempts = attempts + 1, last_error = NULL WHERE id = :id")
+    Mono<Integer> markDone(@Param("id") UUID id);
+
+    @Modifying
+    @Query("UPDATE t_payment_outbox SET status = 'FAILED', attempts = attempts + 1, last_error = :error WHERE id = :id")
+    Mono<Integer> markFailed(@Param("id") UUID id, @Param("error") String error);
+
+    // Исход оплаты неизвестен - платёж больше не отправляется и ждёт ручной проверки
+    @Modifying
+    @Query("UPDATE t_payment_outbox SET status = 'REVIEW', attempts = attempts + 1, last_error = :error WHERE id = :id")
+    Mono<Integer> markForReview(@Param("id") UUID id, @Param("error") String error);
+
+    @Modifying
+    @Query("""
+            UPDATE t_payment_outbox
+            SET attempts = attempts + 1, last_error = :error,
+                next_attempt_at = LOCALTIMESTAMP + make_interval(secs => :delaySeconds)
+            WHERE id = :id
+            """)
+    Mono<Integer> scheduleRetry(@Param("id") UUID id, @Param("delaySeconds") long delaySeconds, @Param("error") String error);
+}
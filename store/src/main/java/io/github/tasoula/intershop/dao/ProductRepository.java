@@ -5,10 +5,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
 import java.util.UUID;
 
 @Repository
@@ -19,6 +21,56 @@ public interface ProductRepository extends R2dbcRepository<Product, UUID> {
 
     Flux<Product> findByStockQuantityGreaterThan(int quantity, Pageable pageable);
 
-    Flux<Product> findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(String title, String description, int i, Pageable pageable);
-}
+    Mono<Long> countByStockQuantityGreaterThan(int quantity);
+
+    // Keyset-пагинация каталога: следующая/предыдущая страница относительно граничной строки (ключ, id).
+    // "before"-запросы возвращают строки в обратном порядке.
+    @Query("SELECT * FROM t_products WHERE stock_quantity > 0 AND id > :id ORDER BY id LIMIT :limit")
+    Flux<Product> findInStockAfterId(@Param("id") UUID id, @Param("limit") int limit);
+
+    @Query("SELECT * FROM t_products WHERE stock_quantity > 0 AND id < :id ORDER BY id DESC LIMIT :limit")
+    Flux<Product> findInStockBeforeId(@Param("id") UUID id, @Param("limit") int limit);
+
+    @Query("SELECT * FROM t_products WHERE stock_quantity > 0 AND (title, id) > (:title, :id) ORDER BY title, id LIMIT :limit")
+    Flux<Product> findInStockAfterTitle(@Param("title") String title, @Param("id") UUID id, @Param("limit") int limit);
+
+    @Query("SELECT * FROM t_products WHERE stock_quantity > 0 AND (title, id) < (:title, :id) ORDER BY title DESC, id DESC LIMIT :limit")
+    Flux<Product> findInStockBeforeTitle(@Param("title") String title, @Param("id") UUID id, @Param("limit") int limit);
 
+    @Query("SELECT * FROM t_products WHERE stock_quantity > 0 AND (price, id) > (:price, :id) ORDER BY price, id LIMIT :limit")
+    Flux<Product> findInStockAfterPrice(@Param("price") BigDecimal price, @Param("id") UUID id, @Param("limit") int limit);
+
+    @Query("SELECT * FROM t_products WHERE stock_quantity > 0 AND (price, id) < (:price, :id) ORDER BY price DESC, id DESC LIMIT :limit")
+    Flux<Product> findInStockBeforePrice(@Param("price") BigDecimal price, @Param("id") UUID id, @Param("limit") int limit);
+
+    // pattern - экранированный шаблон для ILIKE (обслуживается триграммными индексами),
+    // search - исходная строка для ранжирования по релевантности,
+    // sort - колонка сортировки (title, price) или пустая строка для сортировки по релевантности
+    @Query("""
+            SELECT * FROM t_products
+            WHERE stock_quantity > 0
+              AND (title ILIKE :pattern OR description ILIKE :pattern)
+            ORDER BY
+              CASE WHEN :sort = 'title' THEN title END,
+              CASE WHEN :sort = 'price' THEN price END,
+              GREATEST(word_similarity(:search, title), word_similarity(:search, COALESCE(description, ''))) DESC,
+              id
+            LIMIT :limit OFFSET :offset
+            """)
+    Flux<Product> search(@Param("pattern") String pattern,
+                         @Param("search") String search,
+                         @Param("sort") String sort,
+                         @Param("limit") int limit,
+                         @Param("offset") long offset);
+
+    @Query("""
+            SELECT COUNT(*) FROM t_products
+            WHERE stock_quantity > 0
+              AND (title ILIKE :pattern OR description ILIKE :pattern)
+            """)
+    Mono<Long> countSearch(@Param("pattern") String pattern);
+
+    // Возврат товара на склад (отмена неоплаченного заказа) - атомарно, без чтения и перезаписи строки
+    @Query("UPDATE t_products SET stock_quantity = stock_quantity + :quantity WHERE id = :id RETURNING *")
+    Mono<Product> addStock(@Param("id") UUID id, @Param("quantity") int quantity);
+}
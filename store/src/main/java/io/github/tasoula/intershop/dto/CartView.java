@@ -0,0 +1,18 @@
+package io.github.tasoula.intershop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class CartView {
+    private final List<ProductDto> items;
+    private final BigDecimal total;
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.tasoula.intershop.dto;
+
+import io.github.tasoula.intershop.enums.CatalogSort;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Курсор keyset-пагинации каталога: граничная строка (ключ сортировки, id) и номер страницы,
+ * на которую ведёт курсор (только для отображения). Передаётся в запросе как непрозрачная строка.
+ */
+@Getter
+@AllArgsConstructor
+public class CatalogCursor {
+    private static final String SEPARATOR = ":";
+
+    private final CatalogSort sort;
+    private final int page;
+    private final UUID id;
+    private final String key; // title для ALPHA, price для PRICE, null без сортировки
+
+    public static CatalogCursor of(CatalogSort sort, int page, ProductDto product) {
+        String key = switch (sort) {
+            case ALPHA -> product.getTitle();
+            case PRICE -> product.getPrice().toPlainString();
+            case NO -> null;
+        };
+        return new CatalogCursor(sort, page, product.getId(), key);
+    }
+
+    public BigDecimal getPrice() {
+        return new BigDecimal(key);
+    }
+
+    public String encode() {
+        String raw = sort.name() + SEPARATOR + page + SEPARATOR + id + (key == null ? "" : SEPARATOR + key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static CatalogCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            // ключ идёт последним, поэтому разделитель внутри названия товара не мешает разбору
+            String[] parts = raw.split(SEPARATOR, 4);
+            CatalogSort sort = CatalogSort.valueOf(parts[0]);
+            int page = Integer.parseInt(parts[1]);
+            UUID id = UUID.fromString(parts[2]);
+            String key = parts.length > 3 ? parts[3] : null;
+            if (page < 0 || (sort != CatalogSort.NO && key == null)) {
+                throw new IllegalArgumentException();
+            }
+            CatalogCursor cursor = new CatalogCursor(sort, page, id, key);
+            if (sort == CatalogSort.PRICE) {
+                cursor.getPrice();
+            }
+            return cursor;
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы: " + token);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.tasoula.intershop.dto;
+
+import io.github.tasoula.intershop.enums.CatalogSort;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Slice;
+
+@Getter
+@AllArgsConstructor
+public class CursorPage<T> {
+    private final Slice<T> slice;
+    private final String previousCursor;
+    private final String nextCursor;
+
+    public static CursorPage<ProductDto> of(CatalogSort sort, Slice<ProductDto> slice) {
+        if (!slice.hasContent()) {
+            return new CursorPage<>(slice, null, null);
+        }
+        String previous = slice.hasPrevious()
+                ? CatalogCursor.of(sort, slice.getNumber() - 1, slice.getContent().getFirst()).encode()
+                : null;
+        String next = slice.hasNext()
+                ? CatalogCursor.of(sort, slice.getNumber() + 1, slice.getContent().getLast()).encode()
+                : null;
+        return new CursorPage<>(slice, previous, next);
+    }
+}
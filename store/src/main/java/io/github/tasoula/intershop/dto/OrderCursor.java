@@ -0,0 +1,46 @@
+package io.github.tasoula.intershop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Курсор keyset-пагинации истории заказов: последний показанный заказ (created_at, id) и номер страницы,
+ * на которую ведёт курсор (только для отображения). Передаётся в запросе как непрозрачная строка.
+ */
+@Getter
+@AllArgsConstructor
+public class OrderCursor {
+    private static final String SEPARATOR = "|";
+
+    private final int page;
+    private final LocalDateTime createdAt;
+    private final UUID id;
+
+    public static OrderCursor of(int page, OrderDto order) {
+        return new OrderCursor(page, order.getCreatedAt(), order.getId());
+    }
+
+    public String encode() {
+        String raw = page + SEPARATOR + createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static OrderCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\" + SEPARATOR, 3);
+            int page = Integer.parseInt(parts[0]);
+            if (page < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new OrderCursor(page, LocalDateTime.parse(parts[1]), UUID.fromString(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы: " + token);
+        }
+    }
+}
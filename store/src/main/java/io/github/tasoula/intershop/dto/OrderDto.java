@@ -1,11 +1,13 @@
 package io.github.tasoula.intershop.dto;
 
+import io.github.tasoula.intershop.enums.OrderStatus;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,4 +19,6 @@ public class OrderDto {
     private UUID id;
     private List<ProductDto> items;
     private BigDecimal totalAmount;
+    private OrderStatus status;
+    private LocalDateTime createdAt;
 }
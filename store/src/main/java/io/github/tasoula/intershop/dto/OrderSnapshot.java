@@ -0,0 +1,22 @@
+package io.github.tasoula.intershop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Снимок заказа на момент оформления: названия товаров, количества, цены и сумма.
+ * Не зависит от последующих изменений и удаления товаров.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class OrderSnapshot {
+    private BigDecimal totalAmount;
+    private List<ProductDto> items;
+}
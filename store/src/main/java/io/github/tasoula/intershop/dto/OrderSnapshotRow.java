@@ -0,0 +1,25 @@
+package io.github.tasoula.intershop.dto;
+
+import io.github.tasoula.intershop.enums.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Строка истории заказов: изменяемый статус и неизменяемый снимок заказа (t_orders.snapshot, JSON {@link OrderSnapshot}),
+ * записанный при оформлении.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class OrderSnapshotRow {
+    private UUID orderId;
+    private OrderStatus status;
+    private LocalDateTime createdAt;
+    private String snapshot;
+}
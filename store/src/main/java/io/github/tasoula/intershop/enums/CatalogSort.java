@@ -0,0 +1,30 @@
+package io.github.tasoula.intershop.enums;
+
+import org.springframework.data.domain.Sort;
+
+public enum CatalogSort {
+    NO, ALPHA, PRICE;
+
+    // Столбцы t_products, по которым сортируется каталог
+    public static final String TITLE_COLUMN = "title";
+    public static final String PRICE_COLUMN = "price";
+    public static final String ID_COLUMN = "id";
+
+    public static CatalogSort of(String value) {
+        for (CatalogSort sort : values()) {
+            if (sort.name().equals(value)) {
+                return sort;
+            }
+        }
+        return NO; // Неизвестная сортировка - как и раньше, без сортировки
+    }
+
+    // id - дополнительный ключ сортировки, чтобы порядок совпадал с keyset-страницами
+    public Sort toSort() {
+        return switch (this) {
+            case ALPHA -> Sort.by(TITLE_COLUMN).ascending().and(Sort.by(ID_COLUMN));
+            case PRICE -> Sort.by(PRICE_COLUMN).ascending().and(Sort.by(ID_COLUMN));
+            case NO -> Sort.by(ID_COLUMN);
+        };
+    }
+}
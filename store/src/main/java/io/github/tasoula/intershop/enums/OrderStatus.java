@@ -0,0 +1,16 @@
+package io.github.tasoula.intershop.enums;
+
+import lombok.Getter;
+
+@Getter
+public enum OrderStatus {
+    PENDING_PAYMENT("Ожидает оплаты"),
+    PAID("Оплачен"),
+    CANCELLED("Отменён: оплата не прошла");
+
+    private final String title;
+
+    OrderStatus(String title) {
+        this.title = title;
+    }
+}
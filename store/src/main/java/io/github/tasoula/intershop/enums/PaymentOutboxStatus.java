@@ -0,0 +1,5 @@
+package io.github.tasoula.intershop.enums;
+
+// NEW - ждёт отправки (в том числе повторной), DONE - оплачено, FAILED - оплата не прошла, заказ отменён,
+// REVIEW - попытки исчерпаны, исход оплаты неизвестен, нужна ручная проверка (заказ не отменяется)
+public enum PaymentOutboxStatus {NEW, DONE, FAILED, REVIEW}
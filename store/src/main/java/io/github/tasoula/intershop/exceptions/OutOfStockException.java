@@ -0,0 +1,7 @@
+package io.github.tasoula.intershop.exceptions;
+
+public class OutOfStockException extends RuntimeException {
+    public OutOfStockException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package io.github.tasoula.intershop.exceptions;
+
+public class PaymentServiceUnavailableException extends RuntimeException {
+    public PaymentServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.tasoula.intershop.model;
 
+import io.github.tasoula.intershop.enums.OrderStatus;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -32,4 +33,7 @@ public class Order {
 
     @Column("total_amount")
     private BigDecimal totalAmount;
+
+    // Заказ создаётся до оплаты, оплата проводится асинхронно через t_payment_outbox
+    private OrderStatus status = OrderStatus.PENDING_PAYMENT;
 }
@@ -0,0 +1,53 @@
+package io.github.tasoula.intershop.model;
+
+import io.github.tasoula.intershop.enums.PaymentOutboxStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+@Table(name = "t_payment_outbox")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class PaymentOutbox {
+    @Id
+    private UUID id;
+
+    @Column("order_id")
+    private UUID orderId;
+
+    @Column("user_id")
+    private UUID userId;
+
+    private BigDecimal amount;
+
+    private PaymentOutboxStatus status;
+
+    private int attempts;
+
+    @Column("next_attempt_at")
+    private Timestamp nextAttemptAt;
+
+    @Column("last_error")
+    private String lastError;
+
+    @Column("created_at")
+    private Timestamp createdAt;
+
+    // Время первой попытки и создания проставляет БД - по тем же часам, что и выборка в claimBatch
+    public PaymentOutbox(UUID orderId, UUID userId, BigDecimal amount) {
+        this.orderId = orderId;
+        this.userId = userId;
+        this.amount = amount;
+        this.status = PaymentOutboxStatus.NEW;
+    }
+}
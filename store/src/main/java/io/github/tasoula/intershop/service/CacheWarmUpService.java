@@ -0,0 +1,96 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.OrderItemRepository;
+import io.github.tasoula.intershop.enums.CatalogSort;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Прогрев кешей после старта: первая страница каталога для каждой сортировки и размера страницы
+ * и самые заказываемые товары. Пока прогрев не завершён (или не истёк бюджет времени),
+ * readiness-проверка сообщает OUT_OF_SERVICE.
+ */
+@Slf4j
+@Service
+public class CacheWarmUpService {
+    private static final int CONCURRENCY = 4;
+
+    private final ProductDataService productDataService;
+    private final OrderItemRepository orderItemRepository;
+    private final boolean enabled;
+    private final List<Integer> pageSizes;
+    private final int hotProducts;
+    private final Duration timeout;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    public CacheWarmUpService(ProductDataService productDataService,
+                              OrderItemRepository orderItemRepository,
+                              @Value("${cache.warm-up.enabled:true}") boolean enabled,
+                              @Value("${cache.warm-up.page-sizes:10}") List<Integer> pageSizes,
+                              @Value("${cache.warm-up.hot-products:50}") int hotProducts,
+                              @Value("${cache.warm-up.timeout:PT30S}") Duration timeout) {
+        this.productDataService = productDataService;
+        this.orderItemRepository = orderItemRepository;
+        this.enabled = enabled;
+        this.pageSizes = pageSizes;
+        this.hotProducts = hotProducts;
+        this.timeout = timeout;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            finished.set(true);
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        warmUp()
+                .timeout(timeout)
+                .doFinally(signal -> {
+                    finished.set(true);
+                    log.info("Прогрев кешей завершён за {} мс ({})", System.currentTimeMillis() - startedAt, signal);
+                })
+                .subscribe(null, e -> log.warn("Прогрев кешей прерван: {}", e.getMessage()));
+    }
+
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    Mono<Void> warmUp() {
+        return Mono.when(warmUpCatalogPages(), warmUpHotProducts());
+    }
+
+    // Страницы без поиска - как их запрашивает ProductController.showItems. Из products_all читается только
+    // первая страница: следующие каталог без поиска отдаёт по курсору (findAllByCursor) мимо этого кеша
+    private Mono<Void> warmUpCatalogPages() {
+        return Flux.fromArray(CatalogSort.values())
+                .flatMap(sort -> Flux.fromIterable(pageSizes)
+                        .map(size -> (Pageable) PageRequest.of(0, size, sort.toSort())))
+                .flatMap(pageable -> productDataService.findAll(null, pageable)
+                        .onErrorResume(e -> {
+                            log.warn("Не удалось прогреть страницу каталога {}: {}", pageable, e.getMessage());
+                            return Mono.empty();
+                        }), CONCURRENCY)
+                .then(Mono.defer(() -> productDataService.count(null)).onErrorResume(e -> Mono.empty()))
+                .then();
+    }
+
+    private Mono<Void> warmUpHotProducts() {
+        return orderItemRepository.findMostOrderedProductIds(hotProducts)
+                .flatMap(productId -> productDataService.findById(productId)
+                        .onErrorResume(e -> Mono.empty()), CONCURRENCY)
+                .then();
+    }
+}
@@ -1,16 +1,15 @@
 package io.github.tasoula.intershop.service;
 
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
 import io.github.tasoula.client.domain.Amount;
-import io.github.tasoula.intershop.dao.CartItemRepository;
+import io.github.tasoula.intershop.cache.BalanceCache;
+import io.github.tasoula.intershop.dto.CartView;
 import io.github.tasoula.intershop.dto.ProductDto;
-import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
-import io.github.tasoula.intershop.model.CartItem;
-import org.springframework.http.HttpHeaders;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
-import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -18,103 +17,117 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
+@Slf4j
 @Service
 public class CartService {
-    private final CartItemRepository cartItemRepository;
-    private final ProductDataService productDataService;
+    private final CartStore cartStore;
 
     private final WebClient webClient;
 
-    private final ReactiveOAuth2AuthorizedClientManager manager;
+    private final BalanceCache balanceCache;
 
-    public CartService(CartItemRepository cartItemRepository,
-                       ProductDataService productDataService,
+    private final CircuitBreaker circuitBreaker;
+
+    private final Bulkhead bulkhead;
+
+    public CartService(CartStore cartStore,
                        WebClient balanceWebClient,
-                       ReactiveOAuth2AuthorizedClientManager manager) {
-        this.cartItemRepository = cartItemRepository;
-        this.productDataService = productDataService;
+                       BalanceCache balanceCache,
+                       CircuitBreaker balanceCircuitBreaker,
+                       Bulkhead balanceBulkhead) {
+        this.cartStore = cartStore;
         this.webClient = balanceWebClient;
-        this.manager = manager;
+        this.balanceCache = balanceCache;
+        this.circuitBreaker = balanceCircuitBreaker;
+        this.bulkhead = balanceBulkhead;
     }
 
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
     public Flux<ProductDto> findByUserId(UUID userId) {
-        return cartItemRepository.findByUserIdOrderByCreatedAtDesc(userId)
-                .flatMap(cartItem -> productDataService.findById(cartItem.getProductId())
-                        .map(product -> new ProductDto(product, cartItem.getQuantity())));
+        return cartStore.findProducts(userId);
+    }
+
+    // Страница корзины: сумма считается по уже прочитанным позициям, без отдельного запроса
+    @PreAuthorize("hasRole('USER') && principal.id == #userId")
+    public Mono<CartView> getCartView(UUID userId) {
+        return cartStore.findProducts(userId)
+                .collectList()
+                .map(items -> new CartView(items, items.stream()
+                        .map(item -> item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
+                        .reduce(BigDecimal.ZERO, BigDecimal::add)));
     }
 
     public Mono<Integer> getCartQuantity(UUID userId, UUID productId) {
         if (userId == null) {
             return Mono.just(0);
         }
-        return cartItemRepository.findByUserIdAndProductId(userId, productId)
-                .map(CartItem::getQuantity)
-                .defaultIfEmpty(0); // Если нет записи в корзине, то 0
+        return cartStore.getQuantity(userId, productId);
+    }
+
+    // Количество в корзине сразу для всех товаров страницы - один запрос вместо запроса на каждый товар
+    public Mono<Map<UUID, Integer>> getCartQuantities(UUID userId, Collection<UUID> productIds) {
+        if (userId == null || productIds.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        return cartStore.getQuantities(userId, productIds);
     }
 
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
-    @Transactional
     public Mono<Integer> changeProductQuantityInCart(UUID userId, UUID productId, int changeQuantity) {
-        return productDataService.findById(productId)
-                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product with id " + productId + " not found.")))
-                .flatMap(product -> cartItemRepository.findByUserIdAndProductId(userId, productId)
-                        .switchIfEmpty(Mono.just(new CartItem(userId, productId))) // Создаем новый CartItem с quantity = 0
-                        .flatMap(cartItem -> {
-                            int newQuantity = cartItem.getQuantity() + changeQuantity;
-
-                            if (newQuantity <= 0) {
-                                return cartItemRepository.deleteByUserIdAndProductId(userId, productId)
-                                        .then(Mono.just(0)); // Возвращаем 0, так как элемент удален
-                            }
-
-                            newQuantity = Math.min(newQuantity, product.getStockQuantity());
-                            cartItem.setQuantity(newQuantity);
-                            return cartItemRepository.save(cartItem)
-                                    .map(CartItem::getQuantity); // Возвращаем новую quantity
-                        }));
+        return cartStore.changeQuantity(userId, productId, changeQuantity);
     }
 
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
     @Transactional
     public Mono<Void> deleteCartItem(UUID userId, UUID productId) {
-        return cartItemRepository.deleteByUserIdAndProductId(userId, productId);
+        return cartStore.delete(userId, productId);
     }
 
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
     public Mono<BigDecimal> calculateTotalPriceByUserId(UUID userId) {
-        return cartItemRepository.calculateTotalPriceByUserId(userId)
+        return cartStore.calculateTotalPrice(userId)
                 .switchIfEmpty(Mono.just(BigDecimal.ZERO));
     }
 
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
     public Mono<Boolean> isEmpty(UUID userId) {
-        return cartItemRepository.existsByUserId(userId).map(exists -> !exists);
+        return cartStore.isEmpty(userId);
     }
 
+    // Пустой результат - доступность неизвестна: сервис платежей не ответил или защита от его деградации сработала
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
     public Mono<Boolean> isAvailable(UUID userId) {
         return calculateTotalPriceByUserId(userId)
-                .flatMap(totalCartPrice -> getAmount(userId)
-                        .map(amount -> amount.getAmount().compareTo(totalCartPrice) >= 0)
-                        .defaultIfEmpty(false) // Обработка случая, когда ответ от сервиса баланса пустой или ошибка
-                );
+                .flatMap(totalCartPrice -> isAvailable(userId, totalCartPrice));
+    }
+
+    // Страница корзины передаёт сумму из CartView - без повторного запроса суммы в БД
+    @PreAuthorize("hasRole('USER') && principal.id == #userId")
+    public Mono<Boolean> isAvailable(UUID userId, BigDecimal totalCartPrice) {
+        return getBalance(userId)
+                .map(balance -> balance.compareTo(totalCartPrice) >= 0)
+                .defaultIfEmpty(false) // Сервис баланса ответил пустым телом
+                .onErrorResume(e -> {
+                    log.warn("Не удалось получить баланс пользователя {}: {}", userId, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    // Баланс берётся из кеша: страница корзины не обращается к сервису платежей при каждом показе
+    private Mono<BigDecimal> getBalance(UUID userId) {
+        return balanceCache.get(userId, () -> getAmount(userId).map(Amount::getAmount));
     }
 
     private Mono<Amount> getAmount(UUID userId) {
-        return manager.authorize(OAuth2AuthorizeRequest
-                        .withClientRegistrationId("store")
-                        .principal("system")
-                        .build())
-                .map(OAuth2AuthorizedClient::getAccessToken)
-                .map(OAuth2AccessToken::getTokenValue)
-                .flatMap(accessToken -> webClient.get()
-                        .uri("/balance/" + userId.toString())
-                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
-                        .retrieve()
-                        .bodyToMono(Amount.class)
-                );
+        return webClient.get()
+                .uri("/balance/" + userId.toString())
+                .retrieve()
+                .bodyToMono(Amount.class)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
     }
 }
@@ -0,0 +1,39 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dto.ProductDto;
+import io.github.tasoula.intershop.model.CartItem;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Хранилище корзин. Реализация выбирается свойством cart.store:
+ * database (по умолчанию) - t_cart_items, redis - хеши в Redis с отложенной записью в t_cart_items.
+ */
+public interface CartStore {
+
+    // Позиции корзины с данными товаров, новые - первыми
+    Flux<ProductDto> findProducts(UUID userId);
+
+    Mono<Integer> getQuantity(UUID userId, UUID productId);
+
+    Mono<Map<UUID, Integer>> getQuantities(UUID userId, Collection<UUID> productIds);
+
+    // Новое количество (0 - позиция удалена), не больше остатка товара
+    Mono<Integer> changeQuantity(UUID userId, UUID productId, int changeQuantity);
+
+    Mono<Void> delete(UUID userId, UUID productId);
+
+    Mono<BigDecimal> calculateTotalPrice(UUID userId);
+
+    Mono<Boolean> isEmpty(UUID userId);
+
+    // Позиции для оформления заказа: читаются из t_cart_items после записи всех отложенных изменений
+    Flux<CartItem> checkoutItems(UUID userId);
+
+    Mono<Void> clear(UUID userId);
+}
@@ -0,0 +1,65 @@
+package io.github.tasoula.intershop.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Защита оформления заказа от повторной отправки формы. Страница корзины выдаёт ключ на каждое оформление,
+ * ключ занимается в Redis (SET NX с TTL): первый запрос оформляет заказ и записывает его id,
+ * повторы с тем же ключом получают тот же заказ.
+ */
+@Service
+public class CheckoutIdempotencyService {
+    private static final String KEY_PREFIX = "checkout:idem:";
+    // Заказ по ключу ещё оформляется
+    private static final String IN_PROGRESS = "-";
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final Duration ttl;
+    private final Duration pollInterval;
+    private final int maxPolls;
+
+    public CheckoutIdempotencyService(ReactiveStringRedisTemplate redisTemplate,
+                                      @Value("${checkout.idempotency.ttl:PT24H}") Duration ttl,
+                                      @Value("${checkout.idempotency.wait:PT5S}") Duration wait) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+        this.pollInterval = Duration.ofMillis(100);
+        this.maxPolls = (int) Math.max(1, wait.toMillis() / pollInterval.toMillis());
+    }
+
+    // Пустой ответ - заказ не оформлен (пустая корзина, нет товара) либо повтор не дождался первого запроса
+    public Mono<UUID> once(UUID userId, String idempotencyKey, Supplier<Mono<UUID>> checkout) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return Mono.defer(checkout);
+        }
+        String key = KEY_PREFIX + userId + ":" + idempotencyKey;
+        return redisTemplate.opsForValue().setIfAbsent(key, IN_PROGRESS, ttl)
+                .flatMap(acquired -> acquired
+                        ? checkout(key, checkout)
+                        : awaitOrder(key));
+    }
+
+    private Mono<UUID> checkout(String key, Supplier<Mono<UUID>> checkout) {
+        return Mono.defer(checkout)
+                .flatMap(orderId -> redisTemplate.opsForValue().set(key, orderId.toString(), ttl).thenReturn(orderId))
+                // Заказ не создан - ключ освобождаем, форму можно отправить ещё раз
+                .switchIfEmpty(Mono.defer(() -> redisTemplate.delete(key).then(Mono.empty())))
+                .onErrorResume(e -> redisTemplate.delete(key).then(Mono.error(e)));
+    }
+
+    // Повтор, пока первый запрос ещё выполняется, ждёт его результата
+    private Mono<UUID> awaitOrder(String key) {
+        return redisTemplate.opsForValue().get(key)
+                .filter(value -> !IN_PROGRESS.equals(value))
+                .repeatWhenEmpty(maxPolls, attempts -> attempts.delayElements(pollInterval))
+                .map(UUID::fromString)
+                .onErrorResume(IllegalStateException.class, e -> Mono.empty());
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.CartItemRepository;
+import io.github.tasoula.intershop.dto.ProductDto;
+import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
+import io.github.tasoula.intershop.model.CartItem;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+// Корзины напрямую в t_cart_items
+@Component
+@ConditionalOnProperty(name = "cart.store", havingValue = "database", matchIfMissing = true)
+public class DatabaseCartStore implements CartStore {
+    private final CartItemRepository cartItemRepository;
+
+    public DatabaseCartStore(CartItemRepository cartItemRepository) {
+        this.cartItemRepository = cartItemRepository;
+    }
+
+    // Один запрос с JOIN вместо отдельного чтения каждого товара
+    @Override
+    public Flux<ProductDto> findProducts(UUID userId) {
+        return cartItemRepository.findCartProductsByUserId(userId);
+    }
+
+    @Override
+    public Mono<Integer> getQuantity(UUID userId, UUID productId) {
+        return cartItemRepository.findByUserIdAndProductId(userId, productId)
+                .map(CartItem::getQuantity)
+                .defaultIfEmpty(0); // Если нет записи в корзине, то 0
+    }
+
+    @Override
+    public Mono<Map<UUID, Integer>> getQuantities(UUID userId, Collection<UUID> productIds) {
+        return cartItemRepository.findByUserIdAndProductIdIn(userId, productIds)
+                .collectMap(CartItem::getProductId, CartItem::getQuantity);
+    }
+
+    // Один атомарный запрос: остаток товара учитывается в SQL, а уникальный индекс (user_id, product_id)
+    // не даёт параллельным кликам создать дубли строк
+    @Override
+    public Mono<Integer> changeQuantity(UUID userId, UUID productId, int changeQuantity) {
+        if (changeQuantity > 0) {
+            return cartItemRepository.addQuantity(userId, productId, changeQuantity)
+                    .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product with id " + productId + " not found.")));
+        }
+        return cartItemRepository.subtractQuantity(userId, productId, changeQuantity); // 0 - позиция удалена
+    }
+
+    @Override
+    public Mono<Void> delete(UUID userId, UUID productId) {
+        return cartItemRepository.deleteByUserIdAndProductId(userId, productId);
+    }
+
+    @Override
+    public Mono<BigDecimal> calculateTotalPrice(UUID userId) {
+        return cartItemRepository.calculateTotalPriceByUserId(userId);
+    }
+
+    @Override
+    public Mono<Boolean> isEmpty(UUID userId) {
+        return cartItemRepository.existsByUserId(userId).map(exists -> !exists);
+    }
+
+    @Override
+    public Flux<CartItem> checkoutItems(UUID userId) {
+        return cartItemRepository.findByUserId(userId);
+    }
+
+    @Override
+    public Mono<Void> clear(UUID userId) {
+        return cartItemRepository.deleteByUserId(userId);
+    }
+}
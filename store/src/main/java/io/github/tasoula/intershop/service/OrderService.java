@@ -1,217 +1,216 @@
 package io.github.tasoula.intershop.service;
 
-import io.github.tasoula.client.domain.Amount;
-import io.github.tasoula.intershop.dao.CartItemRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.tasoula.intershop.dao.OrderItemRepository;
 import io.github.tasoula.intershop.dao.OrderRepository;
+import io.github.tasoula.intershop.dao.PaymentOutboxRepository;
+import io.github.tasoula.intershop.dto.CursorPage;
+import io.github.tasoula.intershop.dto.OrderCursor;
 import io.github.tasoula.intershop.dto.OrderDto;
-import io.github.tasoula.intershop.dto.ProductDto;
-import io.github.tasoula.intershop.exceptions.PaymentException;
+import io.github.tasoula.intershop.dto.OrderSnapshot;
+import io.github.tasoula.intershop.dto.OrderSnapshotRow;
+import io.github.tasoula.intershop.enums.OrderStatus;
+import io.github.tasoula.intershop.exceptions.OutOfStockException;
 import io.github.tasoula.intershop.model.CartItem;
-import io.github.tasoula.intershop.model.Order;
-import io.github.tasoula.intershop.model.OrderItem;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
+import io.github.tasoula.intershop.model.PaymentOutbox;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
-import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.NoTransactionException;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.reactive.function.client.ClientResponse;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.math.BigDecimal;
-import java.sql.Timestamp;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class OrderService {
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
-    private final CartItemRepository cartItemRepository;
+    private final CartStore cartStore;
     private final ProductDataService productDataService;
-    private final WebClient webClient;
-    private final ReactiveOAuth2AuthorizedClientManager manager;
+    private final PaymentOutboxRepository paymentOutboxRepository;
+    private final CircuitBreaker circuitBreaker;
+    private final ObjectMapper objectMapper;
     public OrderService(OrderRepository orderRepository,
                         OrderItemRepository orderItemRepository,
-                        CartItemRepository cartItemRepository,
+                        CartStore cartStore,
                         ProductDataService productDataService,
-                        WebClient balanceWebClient,
-                        ReactiveOAuth2AuthorizedClientManager manager) {
+                        PaymentOutboxRepository paymentOutboxRepository,
+                        CircuitBreaker paymentCircuitBreaker,
+                        ObjectMapper objectMapper) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
-        this.cartItemRepository = cartItemRepository;
+        this.cartStore = cartStore;
         this.productDataService = productDataService;
-        this.webClient = balanceWebClient;
-        this.manager = manager;
+        this.paymentOutboxRepository = paymentOutboxRepository;
+        this.circuitBreaker = paymentCircuitBreaker;
+        this.objectMapper = objectMapper;
     }
 
 
     public Mono<OrderDto> getById(UUID id) {
-        return orderRepository.findById(id)
-                .flatMap(this::convertToDto);
+        return orderRepository.findSnapshotById(id)
+                .map(this::toDto);
     }
 
+    // Страница истории: одно чтение t_orders по индексу, позиции берутся из снимка заказа.
+    // after - следующая страница (более старые заказы), before - предыдущая (более новые).
+    // Читаем на один заказ больше, чтобы узнать, есть ли страница дальше
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
-    public Flux<OrderDto> getByUserId(UUID userId) {
-        return orderRepository.findByUserId(userId)
-                .flatMap(this::convertToDto);
+    public Mono<CursorPage<OrderDto>> getByUserId(UUID userId, OrderCursor after, OrderCursor before, int pageSize) {
+        boolean backward = after == null && before != null;
+        Flux<OrderSnapshotRow> rows;
+        if (after != null) {
+            rows = orderRepository.findSnapshotsByUserIdBefore(userId, after.getCreatedAt(), after.getId(), pageSize + 1);
+        } else if (before != null) {
+            rows = orderRepository.findSnapshotsByUserIdAfter(userId, before.getCreatedAt(), before.getId(), pageSize + 1);
+        } else {
+            rows = orderRepository.findSnapshotsByUserId(userId, pageSize + 1);
+        }
+        return rows.map(this::toDto)
+                .collectList()
+                .map(orders -> {
+                    boolean hasMore = orders.size() > pageSize;
+                    List<OrderDto> content = new ArrayList<>(hasMore ? orders.subList(0, pageSize) : orders);
+                    Slice<OrderDto> slice;
+                    if (backward) {
+                        Collections.reverse(content);
+                        // Если новее курсора меньше страницы заказов - это начало истории
+                        int number = hasMore ? Math.max(before.getPage(), 1) : 0;
+                        slice = new SliceImpl<>(content, PageRequest.of(number, pageSize), true);
+                    } else {
+                        int number = (after == null) ? 0 : after.getPage();
+                        slice = new SliceImpl<>(content, PageRequest.of(number, pageSize), hasMore);
+                    }
+                    return cursorPage(slice);
+                });
     }
 
+    private static CursorPage<OrderDto> cursorPage(Slice<OrderDto> slice) {
+        if (!slice.hasContent()) {
+            return new CursorPage<>(slice, null, null);
+        }
+        String previous = slice.hasPrevious()
+                ? OrderCursor.of(slice.getNumber() - 1, slice.getContent().getFirst()).encode()
+                : null;
+        String next = slice.hasNext()
+                ? OrderCursor.of(slice.getNumber() + 1, slice.getContent().getLast()).encode()
+                : null;
+        return new CursorPage<>(slice, previous, next);
+    }
+
+    // Оформление не ходит в сервис платежей: заказ, списание со склада, очистка корзины и запись
+    // платежа в t_payment_outbox выполняются в одной транзакции, оплату проводит PaymentDispatcher
     @PreAuthorize("hasRole('USER') && principal.id == #userId")
     @Transactional
     public Mono<UUID> createOrder(UUID userId) {
-        // Получаем все элементы корзины пользователя
-        return cartItemRepository.findByUserId(userId)
+        // Сервис платежей недоступен - не принимаем заказ, который не сможем оплатить: товар остаётся
+        // на складе, корзина - у пользователя
+        CircuitBreaker.State state = circuitBreaker.getState();
+        if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN) {
+            return Mono.error(PaymentClient.paymentUnavailable(CallNotPermittedException.createCallNotPermittedException(circuitBreaker)));
+        }
+        // Получаем все элементы корзины пользователя (с учётом ещё не записанных в БД изменений)
+        return cartStore.checkoutItems(userId)
                 .collectList()
                 .flatMap(cartItems -> {
                     if (cartItems.isEmpty()) {
                         // Если корзина пуста, возвращаем пустой Mono
                         return Mono.empty();
                     }
-                    return checkStockAvailability(cartItems)
-                            .flatMap(allInStock -> (allInStock) ? createAndSaveOrder(userId, cartItems) : Mono.empty());
+                    return placeOrder(userId, cartItems);
                 });
     }
 
-    private Mono<Boolean> checkStockAvailability(List<CartItem> cartItems) {
-        return Flux.fromIterable(cartItems)
-                .flatMap(cartItem -> productDataService.findById(cartItem.getProductId())
-                        .map(product -> product.getStockQuantity() >= cartItem.getQuantity())
-                )
-                .all(Boolean::booleanValue); // Проверяем, что все продукты есть в нужном количестве
-    }
+    // Заказ, его позиции, списание со склада, сумма и платёж в очереди - одним запросом (OrderRepository.checkout),
+    // число обращений к БД не зависит от размера корзины. Товара не хватило - OutOfStockException,
+    // транзакция откатывается вместе с уже сделанными списаниями
+    private Mono<UUID> placeOrder(UUID userId, List<CartItem> cartItems) {
+        UUID orderId = UUID.randomUUID();
+        Map<UUID, Integer> ordered = cartItems.stream()
+                .collect(Collectors.toMap(CartItem::getProductId, CartItem::getQuantity, Integer::sum));
 
-
-    private Mono<Void> processPayment(UUID userId, BigDecimal totalAmount) {
-        Amount amountRequest = new Amount();
-        amountRequest.setAmount(totalAmount);
-
-        return manager.authorize(OAuth2AuthorizeRequest
-                        .withClientRegistrationId("store")
-                        .principal("system") //??? У client_credentials нет имени пользователя, поэтому будем использовать system
-                        .build())
-                .map(OAuth2AuthorizedClient::getAccessToken)
-                .map(OAuth2AccessToken::getTokenValue)
-                .flatMap(accessToken -> webClient.post()
-                        .uri("/payment/" + userId.toString())
-                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(amountRequest)
-                        .retrieve()
-                        .onStatus(status -> !status.is2xxSuccessful(), this::handlePaymentErrorStatus)
-                        .bodyToMono(Void.class));
-    }
-
-    private Mono<? extends Throwable> handlePaymentErrorStatus(ClientResponse response) {
-        HttpStatus status = (HttpStatus) response.statusCode();
-
-        if (HttpStatus.PAYMENT_REQUIRED.equals(status)) {
-            return Mono.error(new PaymentException("Оплата не прошла (недостаточно средств)"));
-        } else if (HttpStatus.NOT_FOUND.equals(status)) {
-            return Mono.error(new NoSuchElementException("Оплата не прошла (счет не найден)"));
-        } else if (HttpStatus.BAD_REQUEST.equals(status)) {
-            return Mono.error(new RuntimeException("Оплата не прошла (неверный запрос)"));
-        } else if (HttpStatus.INTERNAL_SERVER_ERROR.equals(status)) {
-            return Mono.error(new RuntimeException("Оплата не прошла (внутрення ошибка сервера платежей)"));
-        } else if (HttpStatus.FORBIDDEN.equals(status)) {
-            return Mono.error(new RuntimeException("Доступ запрещен"));
-        } else if (HttpStatus.UNAUTHORIZED.equals(status)) {
-            return Mono.error(new RuntimeException("Ошибка аутентификации"));
-        }
-        else {
-            String errorMessage = "Оплата не прошла (Unexpected status code): " + status;
-            return Mono.error(new RuntimeException(errorMessage));
-        }
+        return orderRepository.checkout(orderId, userId)
+                .collectList()
+                .flatMap(reserved -> reserved.isEmpty()
+                        ? Mono.error(new OutOfStockException("Товара недостаточно на складе"))
+                        : cartStore.clear(userId)
+                                // Кеш товаров обновляется строками, которые вернула БД, - только после фиксации
+                                .then(afterCommit(Flux.fromIterable(reserved)
+                                        .flatMap(product -> productDataService.stockReserved(product, ordered.getOrDefault(product.getId(), 0)))
+                                        .then()))
+                                .thenReturn(orderId));
     }
 
-    private Mono<UUID> createAndSaveOrder(UUID userId, List<CartItem> cartItems) {
-        Order order = new Order();
-        order.setUserId(userId);
-        order.setCreatedAt(Timestamp.from(Instant.now()));
-
-        return orderRepository.save(order)
-                .flatMap(savedOrder -> {
-                    UUID orderId = savedOrder.getId();
-
-                    // Создаем элементы заказа и обновляем количество товара на складе
-                    return saveOrderItemsAndUpdateStock(cartItems, orderId)
-                            .flatMap(orderItems -> {
-                                BigDecimal totalAmount = countTotalAmount(orderItems);
-                                savedOrder.setTotalAmount(totalAmount);
-                                // Сохраняем обновленный заказ, очищаем корзину и возвращаем ID заказа
-                                return orderRepository.save(savedOrder)
-                                        .then(cartItemRepository.deleteByUserId(userId))
-                                        .then(processPayment(userId, totalAmount))
-                                        .thenReturn(orderId);
+    // Действие выполняется после фиксации текущей транзакции: при откате кеш не должен получить
+    // незафиксированные остатки. Без транзакции - сразу
+    private Mono<Void> afterCommit(Mono<Void> action) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .filter(TransactionSynchronizationManager::isSynchronizationActive)
+                .map(synchronizationManager -> {
+                    synchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public Mono<Void> afterCommit() {
+                            // Заказ уже зафиксирован - ошибка обновления кеша его не отменяет, остатки в кеше
+                            // исправит TTL
+                            return action.onErrorResume(e -> {
+                                log.warn("Не удалось обновить кеш товаров после оформления заказа: {}", e.toString());
+                                return Mono.empty();
                             });
-                });
-    }
-
-    private BigDecimal countTotalAmount(List<OrderItem> orderItems){
-        return orderItems.stream()
-                .map(item -> item.getPriceAtTimeOfOrder().multiply(BigDecimal.valueOf(item.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+                        }
+                    });
+                    return true;
+                })
+                .onErrorResume(NoTransactionException.class, e -> Mono.empty())
+                .switchIfEmpty(Mono.defer(() -> action.thenReturn(false)))
+                .then();
     }
 
-    private Mono<List<OrderItem>> saveOrderItemsAndUpdateStock(List<CartItem> cartItems, UUID orderId) {
-        return Flux.fromIterable(cartItems)
-                .flatMap(cartItem -> productDataService.findById(cartItem.getProductId())
-                        .flatMap(product -> {
-                            // Создаем элемент заказа
-                            OrderItem orderItem = new OrderItem();
-                            orderItem.setOrderId(orderId);
-                            orderItem.setProductId(cartItem.getProductId());
-                            orderItem.setPriceAtTimeOfOrder(product.getPrice());
-                            orderItem.setQuantity(cartItem.getQuantity());
-
-                            // Обновляем количество товара на складе
-                            product.setStockQuantity(product.getStockQuantity() - cartItem.getQuantity());
-
-                            // Сохраняем обновленный продукт и элемент заказа
-                            return productDataService.update(product)
-                                    .then(orderItemRepository.save(orderItem))
-                                    .thenReturn(orderItem);
-                        })
-                )
-                .collectList();
+    // Оплата прошла
+    @Transactional
+    public Mono<Void> completePayment(PaymentOutbox payment) {
+        return paymentOutboxRepository.markDone(payment.getId())
+                .then(orderRepository.updateStatus(payment.getOrderId(), OrderStatus.PENDING_PAYMENT, OrderStatus.PAID))
+                .then();
     }
 
-    private Mono<OrderDto> convertToDto(Order order) {
-        return orderItemRepository.findByOrderId(order.getId())
-                .flatMap(this::convertToProductDto)  // Используем отдельный метод для преобразования
-                .collectList()
-                .map(productDtos -> {
-                    BigDecimal totalAmount = productDtos.stream()
-                            .map(item -> item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    return new OrderDto(
-                            order.getId(),
-                            productDtos,
-                            totalAmount
-                    );
-                });
+    // Компенсация: оплата окончательно не прошла - отменяем заказ и возвращаем товар на склад.
+    // Товар возвращается, только если заказ действительно перешёл в CANCELLED, поэтому повтор безопасен
+    @Transactional
+    public Mono<Void> cancelUnpaidOrder(PaymentOutbox payment, String reason) {
+        return paymentOutboxRepository.markFailed(payment.getId(), reason)
+                .then(orderRepository.updateStatus(payment.getOrderId(), OrderStatus.PENDING_PAYMENT, OrderStatus.CANCELLED))
+                .filter(updated -> updated > 0)
+                .flatMapMany(updated -> orderItemRepository.findByOrderId(payment.getOrderId()))
+                .concatMap(item -> productDataService.restock(item.getProductId(), item.getQuantity()))
+                .then();
     }
 
-    private Mono<ProductDto> convertToProductDto(OrderItem orderItem) {
-        return productDataService.findById(orderItem.getProductId())
-                .map(product -> {
-                    ProductDto dto = new ProductDto();
-                    dto.setId(product.getId());
-                    dto.setTitle(product.getTitle());
-                    dto.setQuantity(orderItem.getQuantity());
-                    dto.setPrice(orderItem.getPriceAtTimeOfOrder());
-                    return dto;
-                });
+    private OrderDto toDto(OrderSnapshotRow row) {
+        if (row.getSnapshot() == null) {
+            return new OrderDto(row.getOrderId(), List.of(), null, row.getStatus(), row.getCreatedAt());
+        }
+        try {
+            OrderSnapshot snapshot = objectMapper.readValue(row.getSnapshot(), OrderSnapshot.class);
+            return new OrderDto(row.getOrderId(), snapshot.getItems(), snapshot.getTotalAmount(),
+                    row.getStatus(), row.getCreatedAt());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Некорректный снимок заказа " + row.getOrderId(), e);
+        }
     }
 }
-
-
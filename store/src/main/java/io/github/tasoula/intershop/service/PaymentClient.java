@@ -0,0 +1,109 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.tasoula.client.domain.Amount;
+import io.github.tasoula.intershop.cache.BalanceCache;
+import io.github.tasoula.intershop.exceptions.PaymentException;
+import io.github.tasoula.intershop.exceptions.PaymentServiceUnavailableException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Списание средств в сервисе платежей. Вызывается только из PaymentDispatcher - вне транзакции оформления заказа.
+ */
+@Component
+public class PaymentClient {
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private final WebClient webClient;
+    private final BalanceCache balanceCache;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public PaymentClient(WebClient balanceWebClient,
+                         BalanceCache balanceCache,
+                         CircuitBreaker paymentCircuitBreaker,
+                         Bulkhead paymentBulkhead) {
+        this.webClient = balanceWebClient;
+        this.balanceCache = balanceCache;
+        this.circuitBreaker = paymentCircuitBreaker;
+        this.bulkhead = paymentBulkhead;
+    }
+
+    // Повтор с тем же ключом сервис платежей не проводит заново, а отвечает сохранённым результатом
+    public Mono<Void> pay(UUID userId, BigDecimal totalAmount, String idempotencyKey) {
+        Amount amountRequest = new Amount();
+        amountRequest.setAmount(totalAmount);
+
+        return webClient.post()
+                .uri("/payment/" + userId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+                .bodyValue(amountRequest)
+                .retrieve()
+                .onStatus(status -> !status.is2xxSuccessful(), this::handlePaymentErrorStatus)
+                .bodyToMono(Void.class)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .onErrorMap(PaymentClient::isUnavailable, PaymentClient::paymentUnavailable)
+                // Баланс изменился (или закешированное значение оказалось неверным) - сбрасываем кеш
+                .doOnSuccess(ignored -> balanceCache.evict(userId))
+                .doOnError(PaymentException.class, e -> balanceCache.evict(userId));
+    }
+
+    // Отказ окончательный: повтор с теми же данными не пройдёт
+    public static boolean isPermanent(Throwable e) {
+        return e instanceof PaymentException || e instanceof NoSuchElementException;
+    }
+
+    // Сервис не ответил или защита от его деградации отклонила вызов
+    private static boolean isUnavailable(Throwable e) {
+        return e instanceof CallNotPermittedException
+                || e instanceof BulkheadFullException
+                || e instanceof WebClientRequestException;
+    }
+
+    static PaymentServiceUnavailableException paymentUnavailable(Throwable cause) {
+        return new PaymentServiceUnavailableException("Сервис оплаты временно недоступен. Корзина сохранена, попробуйте оформить заказ позже", cause);
+    }
+
+    private Mono<? extends Throwable> handlePaymentErrorStatus(ClientResponse response) {
+        HttpStatus status = (HttpStatus) response.statusCode();
+
+        if (HttpStatus.PAYMENT_REQUIRED.equals(status)) {
+            return Mono.error(new PaymentException("Оплата не прошла (недостаточно средств)"));
+        } else if (HttpStatus.NOT_FOUND.equals(status)) {
+            return Mono.error(new NoSuchElementException("Оплата не прошла (счет не найден)"));
+        } else if (HttpStatus.BAD_REQUEST.equals(status)) {
+            // Тот же запрос будет отклонён и при повторе
+            return Mono.error(new PaymentException("Оплата не прошла (неверный запрос)"));
+        } else if (HttpStatus.UNPROCESSABLE_ENTITY.equals(status)) {
+            // Ключ идемпотентности уже использован для другого платежа - повтор с ним ничего не изменит
+            return Mono.error(new PaymentException("Оплата не прошла (ключ идемпотентности уже использован)"));
+        } else if (HttpStatus.INTERNAL_SERVER_ERROR.equals(status)) {
+            return Mono.error(new RuntimeException("Оплата не прошла (внутрення ошибка сервера платежей)"));
+        } else if (HttpStatus.FORBIDDEN.equals(status)) {
+            return Mono.error(new RuntimeException("Доступ запрещен"));
+        } else if (HttpStatus.UNAUTHORIZED.equals(status)) {
+            return Mono.error(new RuntimeException("Ошибка аутентификации"));
+        }
+        else {
+            String errorMessage = "Оплата не прошла (Unexpected status code): " + status;
+            return Mono.error(new RuntimeException(errorMessage));
+        }
+    }
+}
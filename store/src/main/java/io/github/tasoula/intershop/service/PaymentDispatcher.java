@@ -0,0 +1,97 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.PaymentOutboxRepository;
+import io.github.tasoula.intershop.model.PaymentOutbox;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Проводит оплату заказов из t_payment_outbox: успешная оплата переводит заказ в PAID, окончательный отказ
+ * отменяет его с возвратом товара на склад, остальные ошибки повторяются с экспоненциальной задержкой.
+ * Каждый платёж отправляется с ключом идемпотентности, поэтому повторы безопасны. Если попытки исчерпаны,
+ * а отказа так и не было, исход неизвестен (деньги могли списаться) - платёж уходит на ручную проверку (REVIEW),
+ * заказ остаётся в PENDING_PAYMENT.
+ */
+@Slf4j
+@Component
+public class PaymentDispatcher {
+    private final PaymentOutboxRepository paymentOutboxRepository;
+    private final PaymentClient paymentClient;
+    private final OrderService orderService;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration maxRetryDelay;
+    private final Duration lease;
+
+    public PaymentDispatcher(PaymentOutboxRepository paymentOutboxRepository,
+                             PaymentClient paymentClient,
+                             OrderService orderService,
+                             @Value("${payment.outbox.batch-size:20}") int batchSize,
+                             @Value("${payment.outbox.max-attempts:10}") int maxAttempts,
+                             @Value("${payment.outbox.retry-delay:PT5S}") Duration retryDelay,
+                             @Value("${payment.outbox.max-retry-delay:PT5M}") Duration maxRetryDelay,
+                             @Value("${payment.outbox.lease:PT1M}") Duration lease) {
+        this.paymentOutboxRepository = paymentOutboxRepository;
+        this.paymentClient = paymentClient;
+        this.orderService = orderService;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+        this.lease = lease;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.outbox.poll-interval:PT1S}")
+    public Mono<Void> dispatch() {
+        return paymentOutboxRepository.claimBatch(batchSize, lease.toSeconds())
+                .flatMap(payment -> process(payment)
+                        // Результат не записался - строка вернётся в работу после истечения аренды
+                        .onErrorResume(e -> {
+                            log.warn("Не удалось обработать платёж по заказу {}: {}", payment.getOrderId(), e.getMessage());
+                            return Mono.empty();
+                        }), 4)
+                .then();
+    }
+
+    Mono<Void> process(PaymentOutbox payment) {
+        // Ключ - id заказа: повторная отправка после истечения аренды не спишет деньги дважды
+        return paymentClient.pay(payment.getUserId(), payment.getAmount(), payment.getOrderId().toString())
+                .then(Mono.<Optional<Throwable>>just(Optional.empty()))
+                .onErrorResume(e -> Mono.just(Optional.of(e)))
+                .flatMap(error -> error.isEmpty()
+                        ? orderService.completePayment(payment)
+                        : handleFailure(payment, error.get()));
+    }
+
+    private Mono<Void> handleFailure(PaymentOutbox payment, Throwable e) {
+        int attempt = payment.getAttempts() + 1;
+        if (PaymentClient.isPermanent(e)) {
+            log.info("Оплата заказа {} не прошла (попытка {}), заказ отменён: {}", payment.getOrderId(), attempt, e.getMessage());
+            return orderService.cancelUnpaidOrder(payment, e.getMessage());
+        }
+        // Каждая попытка - повтор с тем же ключом, то есть запрос сохранённого результата. Последняя тоже
+        // не дала ответа: таймаут или 500 могли случиться уже после списания, отменять заказ нельзя
+        if (attempt >= maxAttempts) {
+            log.error("Исход оплаты заказа {} неизвестен после {} попыток, платёж передан на ручную проверку: {}",
+                    payment.getOrderId(), attempt, e.getMessage());
+            return paymentOutboxRepository.markForReview(payment.getId(), e.getMessage()).then();
+        }
+        Duration delay = retryDelay(attempt);
+        log.debug("Оплата заказа {} не прошла (попытка {}), повтор через {}: {}", payment.getOrderId(), attempt, delay, e.getMessage());
+        return paymentOutboxRepository.scheduleRetry(payment.getId(), delay.toSeconds(), e.getMessage()).then();
+    }
+
+    // retryDelay, 2*retryDelay, 4*retryDelay ... но не больше maxRetryDelay
+    Duration retryDelay(int attempt) {
+        int shift = Math.min(attempt - 1, 20);
+        Duration delay = retryDelay.multipliedBy(1L << shift);
+        return delay.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : delay;
+    }
+}
@@ -1,8 +1,12 @@
 package io.github.tasoula.intershop.service;
 
+import io.github.tasoula.intershop.cache.ProductPageCache;
 import io.github.tasoula.intershop.dao.ProductRepository;
+import io.github.tasoula.intershop.dto.CatalogCursor;
 import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
 import io.github.tasoula.intershop.model.Product;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
@@ -13,62 +17,138 @@ import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 @Service
 public class ProductDataService {
     private final ProductRepository productRepository;
     private final ImageService imageService;
-
-
-    private final String ALL_PRODUCTS_CACHE_KEY_PREFIX = "products_all";
+    private final ProductSearchService productSearchService;
+    private final ProductPageCache productPageCache;
+    private final CacheManager cacheManager;
 
     private final String PRODUCTS_CACHE_KEY_PREFIX = "products";
 
-    public ProductDataService(ProductRepository repository, ImageService imageService) {
+    private final String PRODUCTS_COUNT_CACHE_KEY_PREFIX = "products_count";
+
+    public ProductDataService(ProductRepository repository, ImageService imageService,
+                              ProductSearchService productSearchService, ProductPageCache productPageCache,
+                              CacheManager cacheManager) {
         this.productRepository = repository;
         this.imageService = imageService;
+        this.productSearchService = productSearchService;
+        this.productPageCache = productPageCache;
+        this.cacheManager = cacheManager;
     }
 
-    @Cacheable(value = ALL_PRODUCTS_CACHE_KEY_PREFIX, key = "#search + '-' + #pageable.pageNumber + '-' + #pageable.pageSize")
+    // Страницы кешируются в products_all через ProductPageCache: одновременные промахи по одному ключу
+    // схлопываются в один запрос, а записи обновляются заранее, до истечения TTL
     public Mono<List<Product>> findAll(String search, Pageable pageable) {
-        return ((search == null || search.isEmpty())
+        return productPageCache.get(search, pageable, () -> ((search == null || search.isEmpty())
                 ? productRepository.findByStockQuantityGreaterThan(0, pageable)
-                : productRepository.findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(
-                        search.toLowerCase(), search.toLowerCase(), 0, pageable))
-                .collectList();
+                : productSearchService.search(search, pageable))
+                .collectList());
+    }
+
+    // Keyset-страницы не кешируются: курсоры у разных пользователей практически не повторяются,
+    // а первая страница каталога берётся из findAll
+    public Mono<List<Product>> findAfter(CatalogCursor cursor, int limit) {
+        return (switch (cursor.getSort()) {
+            case ALPHA -> productRepository.findInStockAfterTitle(cursor.getKey(), cursor.getId(), limit);
+            case PRICE -> productRepository.findInStockAfterPrice(cursor.getPrice(), cursor.getId(), limit);
+            case NO -> productRepository.findInStockAfterId(cursor.getId(), limit);
+        }).collectList();
+    }
+
+    // Строки возвращаются в обратном порядке - от курсора к началу каталога
+    public Mono<List<Product>> findBefore(CatalogCursor cursor, int limit) {
+        return (switch (cursor.getSort()) {
+            case ALPHA -> productRepository.findInStockBeforeTitle(cursor.getKey(), cursor.getId(), limit);
+            case PRICE -> productRepository.findInStockBeforePrice(cursor.getPrice(), cursor.getId(), limit);
+            case NO -> productRepository.findInStockBeforeId(cursor.getId(), limit);
+        }).collectList();
     }
 
-    @Cacheable(value = PRODUCTS_CACHE_KEY_PREFIX, key = "#productId")
+    // sync: промах заполняется через Cache.retrieve(key, loader), а не put - без события инвалидации
+    @Cacheable(value = PRODUCTS_CACHE_KEY_PREFIX, key = "#productId", sync = true)
     public Mono<Product> findById(UUID productId) {
         return productRepository.findById(productId)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("Product not found with id: " + productId)));
     }
 
-    public Mono<Long> count(){
-        return productRepository.count();
+    // Количество товаров с тем же фильтром, что и в findAll - для корректного числа страниц
+    @Cacheable(value = PRODUCTS_COUNT_CACHE_KEY_PREFIX, key = "#search ?: ''", sync = true)
+    public Mono<Long> count(String search) {
+        return (search == null || search.isEmpty())
+                ? productRepository.countByStockQuantityGreaterThan(0)
+                : productSearchService.count(search);
     }
 
     @Transactional
-    @CacheEvict(value = ALL_PRODUCTS_CACHE_KEY_PREFIX, allEntries = true)
+    @CacheEvict(value = PRODUCTS_COUNT_CACHE_KEY_PREFIX, allEntries = true)
     public Mono<Void> createProduct(Product product, FilePart image) {
         return productRepository.save(product)
                 .flatMap(savedProduct -> imageService.saveToDisc(image, product.getImgPath())
                         .thenReturn(savedProduct))
-                .then(); // Очищаем кеш после создания продукта
+                // Новый товар попадает только в каталог без поиска и в подходящие под него поиски
+                .flatMap(savedProduct -> savedProduct.getStockQuantity() > 0
+                        ? productPageCache.evictPages(search -> search.isEmpty() || ProductSearchService.matches(savedProduct, search))
+                        : Mono.empty());
     }
 
-    @CachePut(value = PRODUCTS_CACHE_KEY_PREFIX, key = "#product.id")
-    public Mono<Product> update(Product product){
-        return productRepository.existsById(product.getId())
-                .flatMap(exists -> {
-                    if(exists){
-                        return productRepository.save(product);
-                    }
-                    else throw  new ResourceNotFoundException("Product with id " + product.getId() + " not found.");
-                })
-                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product with id " + product.getId() + " not found.")));
+    // Товар списан при оформлении заказа (OrderRepository.checkout): кеш обновляется строкой, которую вернула БД,
+    // а не вычисленным по закешированному остатку значением
+    @CachePut(value = PRODUCTS_CACHE_KEY_PREFIX, key = "#reserved.id")
+    public Mono<Product> stockReserved(Product reserved, int quantity) {
+        Product before = new Product(reserved.getId(), reserved.getTitle(), reserved.getDescription(),
+                reserved.getImgPath(), reserved.getPrice(), reserved.getStockQuantity() + quantity);
+        return evictCatalogPages(before, reserved).thenReturn(reserved);
+    }
+
+    @CachePut(value = PRODUCTS_CACHE_KEY_PREFIX, key = "#productId")
+    public Mono<Product> restock(UUID productId, int quantity) {
+        return productRepository.addStock(productId, quantity)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product with id " + productId + " not found.")))
+                .flatMap(saved -> {
+                    Product before = new Product(saved.getId(), saved.getTitle(), saved.getDescription(),
+                            saved.getImgPath(), saved.getPrice(), saved.getStockQuantity() - quantity);
+                    return evictCatalogPages(before, saved).thenReturn(saved);
+                });
+    }
+
+    // Сбрасываем страницы каталога с этим товаром; если изменился порядок или состав каталога -
+    // ещё и страницы, куда товар мог переместиться. При изменении состава (остаток перешёл через ноль,
+    // изменились поля, по которым ищем) сбрасываются и количества - вместе со страницами
+    private Mono<Void> evictCatalogPages(Product before, Product after) {
+        Mono<Void> containing = productPageCache.evictPagesContaining(after.getId());
+        boolean inStock = after.getStockQuantity() > 0;
+        boolean membershipChanged = (before.getStockQuantity() > 0) != inStock
+                || (inStock && (!Objects.equals(before.getTitle(), after.getTitle())
+                        || !Objects.equals(before.getDescription(), after.getDescription())));
+        boolean reordered = membershipChanged || (inStock && !samePrice(before.getPrice(), after.getPrice()));
+        if (!reordered) {
+            return containing;
+        }
+        Mono<Void> pages = containing.then(productPageCache.evictPages(search -> search.isEmpty()
+                || ProductSearchService.matches(before, search)
+                || ProductSearchService.matches(after, search)));
+        return membershipChanged ? pages.then(evictCounts()) : pages;
+    }
+
+    // Ключи products_count - поисковые строки, какие из них закешированы, неизвестно, поэтому сбрасываем все
+    private Mono<Void> evictCounts() {
+        return Mono.fromRunnable(() -> {
+            Cache counts = cacheManager.getCache(PRODUCTS_COUNT_CACHE_KEY_PREFIX);
+            if (counts != null) {
+                counts.clear();
+            }
+        });
+    }
 
+    private static boolean samePrice(BigDecimal a, BigDecimal b) {
+        return (a == null || b == null) ? a == b : a.compareTo(b) == 0;
     }
 }
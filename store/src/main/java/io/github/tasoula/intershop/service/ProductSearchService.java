@@ -0,0 +1,67 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.ProductRepository;
+import io.github.tasoula.intershop.model.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+import static io.github.tasoula.intershop.enums.CatalogSort.PRICE_COLUMN;
+import static io.github.tasoula.intershop.enums.CatalogSort.TITLE_COLUMN;
+
+/**
+ * Поиск товаров по подстроке в названии и описании.
+ * Запросы обслуживаются триграммными GIN-индексами (pg_trgm), результаты без явной сортировки
+ * упорядочиваются по релевантности.
+ */
+@Service
+public class ProductSearchService {
+    private static final Set<String> SORT_COLUMNS = Set.of(TITLE_COLUMN, PRICE_COLUMN);
+
+    private final ProductRepository productRepository;
+
+    public ProductSearchService(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    public Flux<Product> search(String search, Pageable pageable) {
+        String term = search.trim();
+        return productRepository.search(toLikePattern(term), term, sortColumn(pageable.getSort()),
+                pageable.getPageSize(), pageable.getOffset());
+    }
+
+    public Mono<Long> count(String search) {
+        return productRepository.countSearch(toLikePattern(search.trim()));
+    }
+
+    // Проверка в памяти, эквивалентная условию поиска в БД (ILIKE по названию или описанию)
+    public static boolean matches(Product product, String search) {
+        String term = search.trim().toLowerCase();
+        return containsIgnoreCase(product.getTitle(), term) || containsIgnoreCase(product.getDescription(), term);
+    }
+
+    private static boolean containsIgnoreCase(String text, String lowerCaseTerm) {
+        return text != null && text.toLowerCase().contains(lowerCaseTerm);
+    }
+
+    // Экранируем спецсимволы LIKE, чтобы пользовательский ввод искался буквально
+    static String toLikePattern(String term) {
+        String escaped = term
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    private static String sortColumn(Sort sort) {
+        return sort.stream()
+                .map(Sort.Order::getProperty)
+                .filter(SORT_COLUMNS::contains)
+                .findFirst()
+                .orElse("");
+    }
+}
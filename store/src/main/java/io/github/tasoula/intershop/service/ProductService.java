@@ -1,16 +1,23 @@
 package io.github.tasoula.intershop.service;
 
+import io.github.tasoula.intershop.dto.CatalogCursor;
+import io.github.tasoula.intershop.dto.CursorPage;
 import io.github.tasoula.intershop.dto.ProductDto;
 import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
 import io.github.tasoula.intershop.model.Product;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -26,13 +33,43 @@ public class ProductService {
 
     public Mono<Page<ProductDto>> findAll(UUID userId, String search, Pageable pageable) {
         return productDataService.findAll(search, pageable)
-                .flatMapMany(Flux::fromIterable)
-                .flatMap(product -> mapToDto(userId, product))
-                .collectList()
-                .zipWith(productDataService.count())
+                .flatMap(products -> mapToDtos(userId, products))
+                .zipWith(productDataService.count(search))
                 .map(tuple -> new PageImpl<>(tuple.getT1(), pageable, tuple.getT2()));
     }
 
+    // Keyset-режим каталога: читаем на одну строку больше, чтобы узнать, есть ли страница дальше
+    public Mono<CursorPage<ProductDto>> findAllByCursor(UUID userId, CatalogCursor after, CatalogCursor before, int pageSize) {
+        boolean backward = after == null;
+        CatalogCursor cursor = backward ? before : after;
+        return (backward
+                ? productDataService.findBefore(cursor, pageSize + 1)
+                : productDataService.findAfter(cursor, pageSize + 1))
+                .flatMap(products -> mapToDtos(userId, products))
+                .map(dtos -> {
+                    boolean hasMore = dtos.size() > pageSize;
+                    List<ProductDto> content = new ArrayList<>(hasMore ? dtos.subList(0, pageSize) : dtos);
+                    Slice<ProductDto> slice;
+                    if (backward) {
+                        Collections.reverse(content);
+                        // Если до курсора меньше страницы строк - это начало каталога
+                        int number = hasMore ? Math.max(cursor.getPage(), 1) : 0;
+                        slice = new SliceImpl<>(content, PageRequest.of(number, pageSize), true);
+                    } else {
+                        slice = new SliceImpl<>(content, PageRequest.of(cursor.getPage(), pageSize), hasMore);
+                    }
+                    return CursorPage.of(cursor.getSort(), slice);
+                });
+    }
+
+    // Количество в корзине запрашивается одним запросом на всю страницу
+    private Mono<List<ProductDto>> mapToDtos(UUID userId, List<Product> products) {
+        return cartService.getCartQuantities(userId, products.stream().map(Product::getId).toList())
+                .map(quantities -> products.stream()
+                        .map(product -> new ProductDto(product, quantities.getOrDefault(product.getId(), 0)))
+                        .toList());
+    }
+
     private Mono<ProductDto> mapToDto(UUID userId, Product product) {
         return  cartService.getCartQuantity(userId, product.getId())
                 .map(cartQuantity -> new ProductDto(product, cartQuantity));
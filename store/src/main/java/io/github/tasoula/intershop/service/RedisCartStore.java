@@ -0,0 +1,328 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.CartItemRepository;
+import io.github.tasoula.intershop.dto.ProductDto;
+import io.github.tasoula.intershop.model.CartItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Корзины в Redis: хеш cart:{userId} (productId -> количество) и zset cart:{userId}:added
+ * (productId -> время добавления). Изменённые корзины попадают в множество cart:dirty и пачками
+ * записываются в t_cart_items по расписанию. Холодная корзина при первом обращении загружается из БД.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cart.store", havingValue = "redis")
+public class RedisCartStore implements CartStore {
+    static final String DIRTY_KEY = "cart:dirty";
+    // Служебное поле хеша: корзина загружена из БД (отличает пустую корзину от незагруженной).
+    // Значение - поколение загрузки: по нему запись в БД узнаёт, что корзину за это время очистили
+    static final String LOADED_FIELD = "loaded";
+    // Поколение корзины, которую очищает оформление заказа: до фиксации её не записываем в БД
+    static final String CLEARED = "cleared";
+
+    // KEYS: хеш, zset; ARGV: ttl (сек), поколение, затем тройки productId, количество, время добавления
+    private static final RedisScript<Long> LOAD_SCRIPT = RedisScript.of("""
+            if redis.call('HEXISTS', KEYS[1], 'loaded') == 1 then return 0 end
+            redis.call('HSET', KEYS[1], 'loaded', ARGV[2])
+            for i = 3, #ARGV, 3 do
+                redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+                redis.call('ZADD', KEYS[2], ARGV[i + 2], ARGV[i])
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            redis.call('EXPIRE', KEYS[2], ARGV[1])
+            return 1
+            """, Long.class);
+
+    // KEYS: хеш, zset, cart:dirty; ARGV: productId, изменение, остаток, время, userId, ttl (сек).
+    // -1 - хеш истёк после ensureLoaded: изменение не применяется, иначе следующая загрузка из БД его затрёт
+    private static final RedisScript<Long> CHANGE_SCRIPT = RedisScript.of("""
+            if redis.call('HEXISTS', KEYS[1], 'loaded') == 0 then return -1 end
+            local quantity = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0') + tonumber(ARGV[2])
+            if quantity <= 0 then
+                quantity = 0
+                redis.call('HDEL', KEYS[1], ARGV[1])
+                redis.call('ZREM', KEYS[2], ARGV[1])
+            else
+                quantity = math.min(quantity, tonumber(ARGV[3]))
+                redis.call('HSET', KEYS[1], ARGV[1], quantity)
+                redis.call('ZADD', KEYS[2], 'NX', ARGV[4], ARGV[1])
+            end
+            redis.call('SADD', KEYS[3], ARGV[5])
+            redis.call('EXPIRE', KEYS[1], ARGV[6])
+            redis.call('EXPIRE', KEYS[2], ARGV[6])
+            return quantity
+            """, Long.class);
+
+    // KEYS: хеш, cart:dirty; ARGV: userId
+    private static final RedisScript<Long> CLEAR_SCRIPT = RedisScript.of("""
+            redis.call('SREM', KEYS[2], ARGV[1])
+            if redis.call('HEXISTS', KEYS[1], 'loaded') == 0 then return 0 end
+            redis.call('HSET', KEYS[1], 'loaded', 'cleared')
+            return 1
+            """, Long.class);
+
+    // Корзина снова в очереди отложенной записи; очистка, которую откатили, снимается новым поколением.
+    // KEYS: хеш, cart:dirty; ARGV: userId, новое поколение
+    private static final RedisScript<Long> MARK_DIRTY_SCRIPT = RedisScript.of("""
+            if redis.call('HGET', KEYS[1], 'loaded') == 'cleared' then
+                redis.call('HSET', KEYS[1], 'loaded', ARGV[2])
+            end
+            return redis.call('SADD', KEYS[2], ARGV[1])
+            """, Long.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final CartItemRepository cartItemRepository;
+    private final ProductDataService productDataService;
+    private final Duration ttl;
+    private final int flushBatchSize;
+
+    public RedisCartStore(ReactiveStringRedisTemplate redisTemplate,
+                          CartItemRepository cartItemRepository,
+                          ProductDataService productDataService,
+                          @Value("${cart.redis.ttl:P7D}") Duration ttl,
+                          @Value("${cart.redis.flush-batch-size:100}") int flushBatchSize) {
+        this.redisTemplate = redisTemplate;
+        this.cartItemRepository = cartItemRepository;
+        this.productDataService = productDataService;
+        this.ttl = ttl;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    static String cartKey(UUID userId) {
+        return "cart:" + userId;
+    }
+
+    static String addedKey(UUID userId) {
+        return "cart:" + userId + ":added";
+    }
+
+    // Товары берутся из кеша, concatMap сохраняет порядок позиций
+    @Override
+    public Flux<ProductDto> findProducts(UUID userId) {
+        return findItems(userId)
+                .concatMap(item -> productDataService.findById(item.getProductId())
+                        .map(product -> new ProductDto(product, item.getQuantity())));
+    }
+
+    @Override
+    public Mono<Integer> getQuantity(UUID userId, UUID productId) {
+        return ensureLoaded(userId)
+                .then(redisTemplate.<String, String>opsForHash().get(cartKey(userId), productId.toString()))
+                .map(Integer::parseInt)
+                .defaultIfEmpty(0);
+    }
+
+    @Override
+    public Mono<Map<UUID, Integer>> getQuantities(UUID userId, Collection<UUID> productIds) {
+        List<String> fields = productIds.stream().map(UUID::toString).toList();
+        return ensureLoaded(userId)
+                .then(redisTemplate.<String, String>opsForHash().multiGet(cartKey(userId), fields))
+                .map(values -> {
+                    Map<UUID, Integer> quantities = new HashMap<>();
+                    for (int i = 0; i < fields.size(); i++) {
+                        if (values.get(i) != null) {
+                            quantities.put(UUID.fromString(fields.get(i)), Integer.parseInt(values.get(i)));
+                        }
+                    }
+                    return quantities;
+                });
+    }
+
+    // Хеш истёк между ensureLoaded и скриптом - загружаем корзину заново и повторяем изменение
+    @Override
+    public Mono<Integer> changeQuantity(UUID userId, UUID productId, int changeQuantity) {
+        return productDataService.findById(productId) // Остаток - из кеша товаров
+                .flatMap(product -> ensureLoaded(userId)
+                        .then(Mono.defer(() -> redisTemplate.execute(CHANGE_SCRIPT,
+                                        List.of(cartKey(userId), addedKey(userId), DIRTY_KEY),
+                                        List.of(productId.toString(), String.valueOf(changeQuantity),
+                                                String.valueOf(product.getStockQuantity()),
+                                                String.valueOf(System.currentTimeMillis()), userId.toString(),
+                                                String.valueOf(ttl.toSeconds())))
+                                .next()))
+                        .filter(quantity -> quantity >= 0)
+                        .repeatWhenEmpty(2, repeat -> repeat))
+                .map(Long::intValue);
+    }
+
+    @Override
+    public Mono<Void> delete(UUID userId, UUID productId) {
+        return ensureLoaded(userId)
+                .then(redisTemplate.opsForHash().remove(cartKey(userId), productId.toString()))
+                .then(redisTemplate.opsForZSet().remove(addedKey(userId), productId.toString()))
+                .then(redisTemplate.opsForSet().add(DIRTY_KEY, userId.toString()))
+                .then();
+    }
+
+    @Override
+    public Mono<BigDecimal> calculateTotalPrice(UUID userId) {
+        return findItems(userId)
+                .flatMap(item -> productDataService.findById(item.getProductId())
+                        .map(product -> product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity()))))
+                .reduce(BigDecimal::add);
+    }
+
+    @Override
+    public Mono<Boolean> isEmpty(UUID userId) {
+        return ensureLoaded(userId)
+                .then(redisTemplate.opsForHash().size(cartKey(userId)))
+                .map(size -> size <= 1); // Только служебное поле
+    }
+
+    // Перед оформлением заказа корзина пользователя записывается в БД вне очереди. Если запись не удалась
+    // или транзакция оформления откатилась (вместе с записью), корзина возвращается в очередь отложенной
+    // записи - как в flushDirtyCarts
+    @Override
+    public Flux<CartItem> checkoutItems(UUID userId) {
+        return redisTemplate.opsForSet().remove(DIRTY_KEY, userId.toString())
+                .then(afterCompletion(userId, Mono.empty()))
+                .then(persist(userId)
+                        .onErrorResume(e -> markDirty(userId).then(Mono.error(e))))
+                .thenMany(cartItemRepository.findByUserId(userId));
+    }
+
+    // Корзина в Redis удаляется только после фиксации: при откате заказа она остаётся у пользователя.
+    // До этого она помечена очищенной - отложенная запись её пропускает и не возвращает строки в t_cart_items
+    @Override
+    public Mono<Void> clear(UUID userId) {
+        return redisTemplate.execute(CLEAR_SCRIPT, List.of(cartKey(userId), DIRTY_KEY), List.of(userId.toString()))
+                .then(cartItemRepository.deleteByUserId(userId))
+                .then(afterCompletion(userId, redisTemplate.delete(cartKey(userId), addedKey(userId)).then()));
+    }
+
+    private Mono<Void> markDirty(UUID userId) {
+        return redisTemplate.execute(MARK_DIRTY_SCRIPT, List.of(cartKey(userId), DIRTY_KEY),
+                        List.of(userId.toString(), UUID.randomUUID().toString()))
+                .then();
+    }
+
+    // afterCommit выполняется после фиксации текущей транзакции, при откате корзина снова ставится в очередь
+    // отложенной записи. Без транзакции afterCommit выполняется сразу
+    private Mono<Void> afterCompletion(UUID userId, Mono<Void> afterCommit) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .filter(TransactionSynchronizationManager::isSynchronizationActive)
+                .map(synchronizationManager -> {
+                    synchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public Mono<Void> afterCompletion(int status) {
+                            return (status == STATUS_COMMITTED ? afterCommit : markDirty(userId))
+                                    .onErrorResume(e -> {
+                                        log.warn("Не удалось обновить корзину {} после оформления заказа: {}", userId, e.toString());
+                                        return Mono.empty();
+                                    });
+                        }
+                    });
+                    return true;
+                })
+                .onErrorResume(NoTransactionException.class, e -> Mono.empty())
+                .switchIfEmpty(Mono.defer(() -> afterCommit.thenReturn(false)))
+                .then();
+    }
+
+    // Отложенная запись: пачка изменённых корзин за один проход
+    @Scheduled(fixedDelayString = "${cart.redis.flush-interval:PT2S}")
+    public Mono<Void> flushDirtyCarts() {
+        return redisTemplate.opsForSet().pop(DIRTY_KEY, flushBatchSize)
+                .flatMap(userId -> persist(UUID.fromString(userId))
+                        .onErrorResume(e -> {
+                            log.warn("Не удалось записать корзину {} в БД, повторим позже: {}", userId, e.getMessage());
+                            return redisTemplate.opsForSet().add(DIRTY_KEY, userId).then();
+                        }), 4)
+                .then();
+    }
+
+    // Состояние корзины в Redis переносится в t_cart_items целиком: upsert текущих позиций и удаление остальных.
+    // Корзина не загружалась или истекла - в БД актуальное состояние; очищается оформлением заказа - пропускаем
+    Mono<Void> persist(UUID userId) {
+        return redisTemplate.<String, String>opsForHash().get(cartKey(userId), LOADED_FIELD)
+                .filter(generation -> !CLEARED.equals(generation))
+                .flatMap(generation -> readItems(userId).collectList().flatMap(items -> {
+                            UUID[] productIds = items.stream().map(CartItem::getProductId).toArray(UUID[]::new);
+                            Integer[] quantities = items.stream().map(CartItem::getQuantity).toArray(Integer[]::new);
+                            Long[] addedAt = items.stream().map(item -> item.getCreatedAt().getTime()).toArray(Long[]::new);
+                            Mono<Integer> upsert = items.isEmpty()
+                                    ? Mono.just(0)
+                                    : cartItemRepository.upsertAll(userId, productIds, quantities, addedAt);
+                            return upsert.then(cartItemRepository.deleteByUserIdAndProductIdNotIn(userId, productIds));
+                        })
+                        .then(discardIfCleared(userId, generation)))
+                .then();
+    }
+
+    // Пока писали, корзину очистили (сменилось поколение): записанные строки вернули бы заказанные товары
+    // в корзину - удаляем их. Если корзина уже загружена заново, она снова ставится в очередь записи
+    private Mono<Void> discardIfCleared(UUID userId, String generation) {
+        return redisTemplate.<String, String>opsForHash().get(cartKey(userId), LOADED_FIELD)
+                .defaultIfEmpty(CLEARED)
+                .filter(current -> !current.equals(generation))
+                .flatMap(current -> {
+                    log.debug("Корзину {} очистили во время записи в БД, записанные строки удаляются", userId);
+                    return cartItemRepository.deleteByUserId(userId)
+                            .then(CLEARED.equals(current) ? Mono.empty() : markDirty(userId));
+                });
+    }
+
+    // Позиции корзины, новые - первыми
+    private Flux<CartItem> findItems(UUID userId) {
+        return ensureLoaded(userId).thenMany(readItems(userId))
+                .sort(Comparator.comparing(CartItem::getCreatedAt).reversed());
+    }
+
+    private Flux<CartItem> readItems(UUID userId) {
+        Mono<Map<String, Double>> addedAt = redisTemplate.opsForZSet()
+                .rangeWithScores(addedKey(userId), Range.closed(0L, -1L)) // все элементы
+                .collectMap(ZSetOperations.TypedTuple::getValue, ZSetOperations.TypedTuple::getScore);
+        return addedAt.flatMapMany(added -> redisTemplate.<String, String>opsForHash().entries(cartKey(userId))
+                .filter(entry -> !LOADED_FIELD.equals(entry.getKey()))
+                .map(entry -> {
+                    CartItem item = new CartItem(userId, UUID.fromString(entry.getKey()));
+                    item.setQuantity(Integer.parseInt(entry.getValue()));
+                    Double score = added.get(entry.getKey());
+                    if (score != null) {
+                        item.setCreatedAt(new Timestamp(score.longValue()));
+                    }
+                    return item;
+                }));
+    }
+
+    private Mono<Void> ensureLoaded(UUID userId) {
+        return redisTemplate.opsForHash().hasKey(cartKey(userId), LOADED_FIELD)
+                .flatMap(loaded -> loaded ? Mono.empty() : load(userId));
+    }
+
+    // Загрузка из БД атомарна: если корзину параллельно уже загрузили, скрипт ничего не меняет
+    private Mono<Void> load(UUID userId) {
+        return cartItemRepository.findByUserId(userId)
+                .collectList()
+                .flatMap(items -> {
+                    List<String> args = new ArrayList<>();
+                    args.add(String.valueOf(ttl.toSeconds()));
+                    args.add(UUID.randomUUID().toString());
+                    for (CartItem item : items) {
+                        args.add(item.getProductId().toString());
+                        args.add(String.valueOf(item.getQuantity()));
+                        args.add(String.valueOf(item.getCreatedAt().getTime()));
+                    }
+                    return redisTemplate.execute(LOAD_SCRIPT, List.of(cartKey(userId), addedKey(userId)), args).then();
+                });
+    }
+}
@@ -7,6 +7,15 @@ CREATE TABLE IF NOT EXISTS t_products (
     stock_quantity INT NOT NULL CHECK(stock_quantity >= 0)
 );
 
+-- Триграммные индексы для поиска по подстроке (ILIKE '%...%') в названии и описании
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_products_title_trgm ON t_products USING gin (title gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_products_description_trgm ON t_products USING gin (description gin_trgm_ops);
+
+-- Индексы для keyset-пагинации каталога по (title, id) и (price, id); по id работает первичный ключ
+CREATE INDEX IF NOT EXISTS idx_products_in_stock_title ON t_products (title, id) WHERE stock_quantity > 0;
+CREATE INDEX IF NOT EXISTS idx_products_in_stock_price ON t_products (price, id) WHERE stock_quantity > 0;
+
 CREATE TABLE IF NOT EXISTS t_users(
 	id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
 	user_name VARCHAR(255) UNIQUE NOT NULL,
@@ -39,6 +48,21 @@ CREATE TABLE IF NOT EXISTS t_cart_items(
 	CONSTRAINT fk_product FOREIGN KEY (product_id) REFERENCES t_products(id)
 );
 
+-- Дубли, успевшие появиться до уникального индекса, схлопываем в одну (последнюю) строку.
+-- Только пока индекса нет: после его создания дублей быть не может, и таблицу при старте не просматриваем.
+-- Тело блока - в одинарных кавычках: скрипт делится на команды по ';' вне строковых литералов
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_indexes WHERE tablename = ''t_cart_items'' AND indexname = ''uq_cart_items_user_product'') THEN
+        DELETE FROM t_cart_items a USING t_cart_items b
+        WHERE a.user_id = b.user_id AND a.product_id = b.product_id AND a.ctid < b.ctid;
+    END IF;
+END
+';
+
+-- Одна строка на товар в корзине пользователя: цель для INSERT ... ON CONFLICT
+CREATE UNIQUE INDEX IF NOT EXISTS uq_cart_items_user_product ON t_cart_items(user_id, product_id);
+
 CREATE TABLE IF NOT EXISTS t_orders(
    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
    user_id UUID NOT NULL,
@@ -48,6 +72,12 @@ CREATE TABLE IF NOT EXISTS t_orders(
    CONSTRAINT fk_user FOREIGN KEY (user_id) REFERENCES t_users(id) ON DELETE CASCADE
 );
 
+-- Заказы, оформленные до появления статуса, были оплачены в момент оформления
+ALTER TABLE t_orders ADD COLUMN IF NOT EXISTS status VARCHAR(20) NOT NULL DEFAULT 'PAID';
+
+-- История заказов пользователя: keyset-пагинация от новых к старым по (created_at, id)
+CREATE INDEX IF NOT EXISTS idx_orders_user_created ON t_orders(user_id, created_at DESC, id DESC);
+
 CREATE TABLE IF NOT EXISTS t_order_items(
 	id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
 	order_id UUID NOT NULL,
@@ -57,4 +87,46 @@ CREATE TABLE IF NOT EXISTS t_order_items(
 
 	CONSTRAINT fk_order FOREIGN KEY (order_id) REFERENCES t_orders(id) ON DELETE CASCADE,
 	CONSTRAINT fk_product FOREIGN KEY (product_id) REFERENCES t_products(id)
-);
\ No newline at end of file
+);
+
+-- Позиции заказа выбираются по order_id (возврат товара при отмене, заполнение снимков)
+CREATE INDEX IF NOT EXISTS idx_order_items_order ON t_order_items(order_id);
+
+-- Снимок заказа для истории заказов: названия, количества, цены и сумма на момент оформления.
+-- Пишется один раз при оформлении (OrderRepository.checkout) и не меняется.
+-- Колонка и снимки для заказов, оформленных до её появления, создаются одной транзакцией и только
+-- при первом запуске: дальше снимок есть у каждого заказа, и t_orders при старте не просматриваем
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.columns WHERE table_name = ''t_orders'' AND column_name = ''snapshot'') THEN
+        ALTER TABLE t_orders ADD COLUMN snapshot JSONB;
+        UPDATE t_orders o SET snapshot = jsonb_build_object(
+            ''totalAmount'', o.total_amount,
+            ''items'', COALESCE((
+                SELECT jsonb_agg(jsonb_build_object(
+                    ''id'', i.product_id, ''title'', p.title, ''quantity'', i.quantity, ''price'', i.price_at_time_of_order)
+                    ORDER BY i.product_id)
+                FROM t_order_items i
+                LEFT JOIN t_products p ON p.id = i.product_id
+                WHERE i.order_id = o.id), ''[]''::jsonb));
+    END IF;
+END
+';
+
+-- Платежи к отправке в сервис платежей: строка пишется в одной транзакции с заказом,
+-- отправку, повторы и компенсацию выполняет PaymentDispatcher
+CREATE TABLE IF NOT EXISTS t_payment_outbox(
+	id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+	order_id UUID NOT NULL UNIQUE,
+	user_id UUID NOT NULL,
+	amount NUMERIC(9,2) NOT NULL CHECK(amount >= 0),
+	status VARCHAR(20) NOT NULL DEFAULT 'NEW',
+	attempts INT NOT NULL DEFAULT 0,
+	next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	last_error TEXT,
+	created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+	CONSTRAINT fk_order FOREIGN KEY (order_id) REFERENCES t_orders(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_payment_outbox_pending ON t_payment_outbox(next_attempt_at) WHERE status = 'NEW';
@@ -59,12 +59,20 @@ $(document).ready(function() {
 
                 // Проверяем, пуста ли корзина и скрываем/показываем кнопку "Купить"
                 $.get('/cart/is_empty', function(isEmpty) {
-                    $.get('/cart/is_available', function(isAvailable) {
+                    $.get('/cart/is_available', function(isAvailable, status, xhr) {
+                        var unknown = xhr.status === 204; // сервис платежей не ответил
                         if(isEmpty){
                             $('#button-new-order').hide();
                             $('#payment-unavailable').hide();
+                            $('#payment-unknown').hide();
+                        }
+                        else if(unknown){
+                            $('#button-new-order').hide();
+                            $('#payment-unavailable').hide();
+                            $('#payment-unknown').show();
                         }
                         else{
+                            $('#payment-unknown').hide();
                             if(isAvailable){
                                  $('#button-new-order').show();
                                  $('#payment-unavailable').hide();
@@ -0,0 +1,87 @@
+package io.github.tasoula.intershop.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class BalanceCacheTest {
+
+    private CacheInvalidationBus invalidationBus;
+    private BalanceCache cache;
+    private UUID userId;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        invalidationBus = mock(CacheInvalidationBus.class);
+        cache = new BalanceCache(invalidationBus, Duration.ofMinutes(1), 100);
+        userId = UUID.randomUUID();
+        loads = new AtomicInteger();
+    }
+
+    private Mono<BigDecimal> load(BigDecimal balance) {
+        return Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return balance;
+        });
+    }
+
+    @Test
+    void get_cachesBalanceUntilEvicted() {
+        StepVerifier.create(cache.get(userId, () -> load(BigDecimal.TEN))).expectNext(BigDecimal.TEN).verifyComplete();
+        StepVerifier.create(cache.get(userId, () -> load(BigDecimal.ONE))).expectNext(BigDecimal.TEN).verifyComplete();
+        assertThat(loads).hasValue(1);
+
+        cache.evict(userId);
+
+        StepVerifier.create(cache.get(userId, () -> load(BigDecimal.ONE))).expectNext(BigDecimal.ONE).verifyComplete();
+        assertThat(loads).hasValue(2);
+        verify(invalidationBus).publish(BalanceCache.CACHE_NAME, userId);
+    }
+
+    @Test
+    void get_concurrentRequestsShareOneLoad() {
+        Sinks.One<BigDecimal> response = Sinks.one();
+        Mono<BigDecimal> first = cache.get(userId, () -> load(BigDecimal.ZERO).then(response.asMono()));
+        Mono<BigDecimal> second = cache.get(userId, () -> load(BigDecimal.ZERO));
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> response.tryEmitValue(BigDecimal.TEN))
+                .assertNext(balances -> {
+                    assertThat(balances.getT1()).isEqualTo(BigDecimal.TEN);
+                    assertThat(balances.getT2()).isEqualTo(BigDecimal.TEN);
+                })
+                .verifyComplete();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void get_errorIsNotCached() {
+        StepVerifier.create(cache.get(userId, () -> Mono.error(new IllegalStateException("payment-service down"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        StepVerifier.create(cache.get(userId, () -> load(BigDecimal.TEN))).expectNext(BigDecimal.TEN).verifyComplete();
+    }
+
+    @Test
+    void evictLocal_eventFromOtherNode_dropsEntryWithoutPublishing() {
+        cache.get(userId, () -> load(BigDecimal.TEN)).block();
+
+        cache.evictLocal(BalanceCache.CACHE_NAME, userId.toString());
+        cache.evictLocal("products", userId.toString()); // чужой кеш - игнорируется
+
+        StepVerifier.create(cache.get(userId, () -> load(BigDecimal.ONE))).expectNext(BigDecimal.ONE).verifyComplete();
+        verify(invalidationBus, never()).publish(any(), any());
+    }
+}
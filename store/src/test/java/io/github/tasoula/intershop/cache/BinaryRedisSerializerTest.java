@@ -0,0 +1,100 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryRedisSerializerTest {
+
+    private final ProductBinaryRedisSerializer productSerializer = new ProductBinaryRedisSerializer();
+    private final CachedPageBinaryRedisSerializer pageSerializer = new CachedPageBinaryRedisSerializer();
+
+    private static Product product(int i) {
+        return new Product(UUID.randomUUID(), "Товар " + i, "Описание товара номер " + i, "img/" + i + ".png",
+                new BigDecimal("1999.90").add(BigDecimal.valueOf(i)), i);
+    }
+
+    private static CachedPage page(int size) {
+        return new CachedPage(IntStream.range(0, size).mapToObj(BinaryRedisSerializerTest::product).toList(),
+                System.currentTimeMillis(), 12);
+    }
+
+    @Test
+    void product_roundTrip_keepsAllFields() {
+        Product product = product(7);
+
+        byte[] bytes = productSerializer.serialize(product);
+
+        assertThat(bytes[0]).isEqualTo(VersionedBinaryRedisSerializer.VERSION);
+        assertThat(productSerializer.deserialize(bytes)).isEqualTo(product);
+    }
+
+    @Test
+    void product_roundTrip_nullFields() {
+        Product product = new Product();
+
+        assertThat(productSerializer.deserialize(productSerializer.serialize(product))).isEqualTo(product);
+    }
+
+    @Test
+    void page_roundTrip_keepsProductsAndMetadata() {
+        CachedPage page = page(10);
+
+        CachedPage restored = pageSerializer.deserialize(pageSerializer.serialize(page));
+
+        assertThat(restored.getProducts()).isEqualTo(page.getProducts());
+        assertThat(restored.getExpiresAt()).isEqualTo(page.getExpiresAt());
+        assertThat(restored.getComputeMillis()).isEqualTo(page.getComputeMillis());
+    }
+
+    @Test
+    void deserialize_legacyJson_readsWithPreviousSerializer() {
+        Product product = product(1);
+        byte[] json = new Jackson2JsonRedisSerializer<>(Product.class).serialize(product);
+
+        assertThat(productSerializer.deserialize(json)).isEqualTo(product);
+    }
+
+    @Test
+    void deserialize_legacyListPage_isCacheMiss() {
+        byte[] json = new GenericJackson2JsonRedisSerializer().serialize(new ArrayList<>(List.of(product(1))));
+
+        assertThat(pageSerializer.deserialize(json)).isNull();
+    }
+
+    @Test
+    void deserialize_unknownVersion_isCacheMiss() {
+        byte[] bytes = productSerializer.serialize(product(1));
+        bytes[0] = (byte) (VersionedBinaryRedisSerializer.VERSION + 1);
+
+        assertThat(productSerializer.deserialize(bytes)).isNull();
+    }
+
+    @Test
+    void jsonSerializer_binaryValue_isCacheMiss() {
+        JsonFallbackRedisSerializer<Product> json = new JsonFallbackRedisSerializer<>(new Jackson2JsonRedisSerializer<>(Product.class));
+        Product product = product(1);
+
+        assertThat(json.deserialize(productSerializer.serialize(product))).isNull();
+        assertThat(json.deserialize(json.serialize(product))).isEqualTo(product);
+    }
+
+    @Test
+    void page_binaryIsLessThanHalfOfJson() {
+        CachedPage page = page(50);
+
+        int jsonSize = new GenericJackson2JsonRedisSerializer().serialize(page).length;
+        int binarySize = pageSerializer.serialize(page).length;
+
+        assertThat(binarySize).isLessThan(jsonSize / 2);
+    }
+}
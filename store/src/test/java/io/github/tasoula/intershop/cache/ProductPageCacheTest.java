@@ -0,0 +1,145 @@
+package io.github.tasoula.intershop.cache;
+
+import io.github.tasoula.intershop.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ProductPageCacheTest {
+
+    private static final Pageable PAGEABLE = PageRequest.of(0, 10);
+    private static final String KEY = ProductPageCache.key("phone", PAGEABLE);
+
+    private Cache cache;
+    private ProductPageIndex pageIndex;
+    private ProductPageCache productPageCache;
+    private AtomicInteger loads;
+    private List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(ProductPageCache.CACHE_NAME);
+        cache = cacheManager.getCache(ProductPageCache.CACHE_NAME);
+        pageIndex = mock(ProductPageIndex.class);
+        when(pageIndex.record(any(), any(), any())).thenReturn(Mono.empty());
+        when(pageIndex.forgetProduct(any())).thenReturn(Mono.empty());
+        when(pageIndex.forgetPages(any())).thenReturn(Mono.empty());
+        productPageCache = new ProductPageCache(cacheManager, pageIndex, Duration.ofMinutes(3), 1.0);
+        loads = new AtomicInteger();
+        Product product = new Product();
+        product.setId(UUID.randomUUID());
+        products = List.of(product);
+    }
+
+    private Supplier<Mono<List<Product>>> slowLoader() {
+        return () -> Mono.delay(Duration.ofMillis(100))
+                .then(Mono.fromSupplier(() -> {
+                    loads.incrementAndGet();
+                    return products;
+                }));
+    }
+
+    @Test
+    void get_concurrentMisses_loadOnce() {
+        StepVerifier.create(Flux.range(0, 20)
+                        .flatMap(i -> productPageCache.get("phone", PAGEABLE, slowLoader()))
+                        .collectList())
+                .assertNext(results -> assertThat(results).hasSize(20).allMatch(products::equals))
+                .verifyComplete();
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.get(KEY)).isNotNull();
+        verify(pageIndex).record(eq(KEY), eq(List.of(products.getFirst().getId())), any());
+    }
+
+    @Test
+    void get_cachedPage_doesNotCallLoader() {
+        cache.put(KEY, new CachedPage(products, System.currentTimeMillis() + 60_000, 5));
+
+        StepVerifier.create(productPageCache.get("phone", PAGEABLE, slowLoader()))
+                .expectNext(products)
+                .verifyComplete();
+
+        assertThat(loads).hasValue(0);
+    }
+
+    @Test
+    void get_pageNearExpiry_returnsCachedValueAndRefreshesInBackground() {
+        List<Product> stale = List.of(new Product());
+        cache.put(KEY, new CachedPage(stale, System.currentTimeMillis(), 5));
+
+        // Синхронный загрузчик: фоновое обновление завершается до выдачи результата
+        Supplier<Mono<List<Product>>> loader = () -> Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return products;
+        });
+
+        StepVerifier.create(productPageCache.get("phone", PAGEABLE, loader))
+                .expectNext(stale)
+                .verifyComplete();
+
+        assertThat(loads).hasValue(1);
+        assertThat(((CachedPage) cache.get(KEY).get()).getProducts()).isEqualTo(products);
+    }
+
+    @Test
+    void shouldRefreshEarly_freshPage_false() {
+        CachedPage page = new CachedPage(products, System.currentTimeMillis() + 60_000, 1);
+
+        assertThat(productPageCache.shouldRefreshEarly(page)).isFalse();
+    }
+
+    @Test
+    void evictPagesContaining_evictsIndexedPagesOnly() {
+        UUID productId = UUID.randomUUID();
+        cache.put("0-10-UNSORTED-", new CachedPage(products, Long.MAX_VALUE, 1));
+        cache.put("1-10-UNSORTED-", new CachedPage(products, Long.MAX_VALUE, 1));
+        when(pageIndex.pagesContaining(productId)).thenReturn(Flux.just("0-10-UNSORTED-"));
+
+        StepVerifier.create(productPageCache.evictPagesContaining(productId))
+                .verifyComplete();
+
+        assertThat(cache.get("0-10-UNSORTED-")).isNull();
+        assertThat(cache.get("1-10-UNSORTED-")).isNotNull();
+        verify(pageIndex).forgetProduct(productId);
+    }
+
+    @Test
+    void evictPages_filtersBySearchTerm() {
+        cache.put("0-10-UNSORTED-", new CachedPage(products, Long.MAX_VALUE, 1));
+        cache.put("0-10-UNSORTED-phone", new CachedPage(products, Long.MAX_VALUE, 1));
+        cache.put("0-10-UNSORTED-lamp", new CachedPage(products, Long.MAX_VALUE, 1));
+        when(pageIndex.activePages()).thenReturn(Flux.just("0-10-UNSORTED-", "0-10-UNSORTED-phone", "0-10-UNSORTED-lamp"));
+
+        StepVerifier.create(productPageCache.evictPages(search -> search.isEmpty() || search.equals("phone")))
+                .verifyComplete();
+
+        assertThat(cache.get("0-10-UNSORTED-")).isNull();
+        assertThat(cache.get("0-10-UNSORTED-phone")).isNull();
+        assertThat(cache.get("0-10-UNSORTED-lamp")).isNotNull();
+        verify(pageIndex).forgetPages(List.of("0-10-UNSORTED-", "0-10-UNSORTED-phone"));
+    }
+
+    @Test
+    void searchOf_extractsSearchWithDashes() {
+        assertThat(ProductPageCache.searchOf(ProductPageCache.key("wi-fi router", PAGEABLE))).isEqualTo("wi-fi router");
+        assertThat(ProductPageCache.searchOf(ProductPageCache.key(null, PAGEABLE))).isEmpty();
+    }
+}
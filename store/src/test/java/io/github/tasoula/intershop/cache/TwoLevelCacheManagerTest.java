@@ -0,0 +1,72 @@
+package io.github.tasoula.intershop.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class TwoLevelCacheManagerTest {
+
+    private Cache remote;
+    private BiConsumer<String, String> handler;
+    private TwoLevelCacheManager cacheManager;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        remote = spy(new ConcurrentMapCache("products"));
+        CacheManager remoteManager = mock(CacheManager.class);
+        when(remoteManager.getCache("products")).thenReturn(remote);
+
+        CacheInvalidationBus invalidationBus = mock(CacheInvalidationBus.class);
+        cacheManager = new TwoLevelCacheManager(remoteManager, Set.of("products"), Duration.ofMinutes(1), 100, invalidationBus);
+        cacheManager.afterPropertiesSet();
+
+        ArgumentCaptor<BiConsumer<String, String>> captor = ArgumentCaptor.forClass(BiConsumer.class);
+        verify(invalidationBus).subscribe(captor.capture());
+        handler = captor.getValue();
+    }
+
+    @Test
+    void invalidationEvent_evictsLocalCopy_nextReadGoesToRemote() {
+        Cache cache = cacheManager.getCache("products");
+        cache.put("key", "value");
+        reset(remote);
+
+        handler.accept("products", "key");
+
+        assertThat(cache.get("key").get()).isEqualTo("value");
+        verify(remote).get("key");
+    }
+
+    @Test
+    void invalidationEventWithoutKey_clearsLocalCache() {
+        Cache cache = cacheManager.getCache("products");
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        reset(remote);
+
+        handler.accept("products", null);
+
+        cache.get("key1");
+        cache.get("key2");
+        verify(remote).get("key1");
+        verify(remote).get("key2");
+    }
+
+    @Test
+    void invalidationEvent_unknownCache_isIgnored() {
+        handler.accept("products_all", "key");
+
+        verifyNoInteractions(remote);
+    }
+}
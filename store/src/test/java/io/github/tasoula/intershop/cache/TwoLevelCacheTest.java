@@ -0,0 +1,133 @@
+package io.github.tasoula.intershop.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class TwoLevelCacheTest {
+
+    private Cache remote;
+    private com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private CacheInvalidationBus invalidationBus;
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        remote = spy(new ConcurrentMapCache("products"));
+        local = Caffeine.newBuilder().expireAfterWrite(Duration.ofMinutes(1)).maximumSize(100).build();
+        invalidationBus = mock(CacheInvalidationBus.class);
+        cache = new TwoLevelCache(remote, local, invalidationBus);
+    }
+
+    @Test
+    void retrieve_localHit_doesNotTouchRemote() {
+        cache.put("key", "value");
+        reset(remote);
+
+        assertThat(cache.retrieve("key").join()).isEqualTo("value");
+
+        verify(remote, never()).retrieve("key");
+    }
+
+    @Test
+    void retrieve_localMiss_loadsFromRemoteAndFillsLocal() {
+        remote.put("key", "value");
+
+        Object result = cache.retrieve("key").join();
+
+        assertThat(result instanceof Cache.ValueWrapper wrapper ? wrapper.get() : result).isEqualTo("value");
+        assertThat(local.getIfPresent("key")).isEqualTo("value");
+    }
+
+    @Test
+    void evict_removesFromBothLevels() {
+        cache.put("key", "value");
+
+        cache.evict("key");
+
+        assertThat(local.getIfPresent("key")).isNull();
+        assertThat(remote.get("key")).isNull();
+    }
+
+    @Test
+    void evictLocal_keepsRemoteEntry() {
+        cache.put("key", "value");
+
+        cache.evictLocal("key");
+
+        assertThat(local.getIfPresent("key")).isNull();
+        assertThat(remote.get("key")).isNotNull();
+    }
+
+    @Test
+    void clear_removesAllEntriesFromBothLevels() {
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+
+        cache.clear();
+
+        assertThat(local.estimatedSize()).isZero();
+        assertThat(cache.get("key1")).isNull();
+    }
+
+    @Test
+    void put_publishesInvalidationForOtherNodes() {
+        cache.put("key", "value");
+
+        verify(invalidationBus).publish("products", "key");
+    }
+
+    @Test
+    void putLoaded_doesNotPublishInvalidation() {
+        cache.putLoaded("key", "value");
+
+        assertThat(local.getIfPresent("key")).isEqualTo("value");
+        assertThat(remote.get("key")).isNotNull();
+        verifyNoInteractions(invalidationBus);
+    }
+
+    @Test
+    void retrieveWithLoader_missFill_doesNotPublishInvalidation() {
+        Object loaded = cache.retrieve("key", () -> CompletableFuture.completedFuture("value")).join();
+
+        assertThat(loaded).isEqualTo("value");
+        assertThat(local.getIfPresent("key")).isEqualTo("value");
+        verifyNoInteractions(invalidationBus);
+    }
+
+    @Test
+    void clear_publishesInvalidationOfWholeCache() {
+        cache.clear();
+
+        verify(invalidationBus).publish("products", null);
+    }
+
+    @Test
+    void read_doesNotPublishInvalidation() {
+        remote.put("key", "value");
+
+        cache.get("key");
+
+        verifyNoInteractions(invalidationBus);
+    }
+
+    @Test
+    void evictLocalByKeyString_matchesNonStringKeys() {
+        UUID id = UUID.randomUUID();
+        cache.put(id, "value");
+
+        cache.evictLocalByKeyString(id.toString());
+
+        assertThat(local.getIfPresent(id.toString())).isNull();
+        assertThat(remote.get(id)).isNotNull();
+    }
+}
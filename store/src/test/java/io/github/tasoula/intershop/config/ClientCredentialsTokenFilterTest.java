@@ -0,0 +1,205 @@
+package io.github.tasoula.intershop.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ClientCredentialsTokenFilterTest {
+
+    private ReactiveOAuth2AuthorizedClientManager manager;
+    private ReactiveOAuth2AuthorizedClientService authorizedClientService;
+    private MutableClock clock;
+    private ClientCredentialsTokenFilter filter;
+    private List<String> sentTokens;
+    private HttpStatus responseStatus;
+    private ExchangeFunction exchange;
+
+    @BeforeEach
+    void setUp() {
+        manager = mock(ReactiveOAuth2AuthorizedClientManager.class);
+        authorizedClientService = mock(ReactiveOAuth2AuthorizedClientService.class);
+        clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+        filter = new ClientCredentialsTokenFilter(manager, authorizedClientService, "store", Duration.ofSeconds(60), clock);
+        sentTokens = new ArrayList<>();
+        responseStatus = HttpStatus.OK;
+        exchange = request -> {
+            sentTokens.add(request.headers().getFirst(HttpHeaders.AUTHORIZATION));
+            return Mono.just(ClientResponse.create(responseStatus).build());
+        };
+    }
+
+    private ClientRequest request() {
+        return ClientRequest.create(HttpMethod.GET, URI.create("http://payment/balance/1")).build();
+    }
+
+    private Mono<OAuth2AuthorizedClient> authorizedClient(String value, Duration lifetime) {
+        OAuth2AccessToken token = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, value,
+                clock.instant(), clock.instant().plus(lifetime));
+        return Mono.just(new OAuth2AuthorizedClient(mock(ClientRegistration.class), "system", token));
+    }
+
+    @Test
+    void filter_reusesTokenUntilCloseToExpiry() {
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class))).thenReturn(authorizedClient("token-1", Duration.ofMinutes(5)));
+
+        filter.filter(request(), exchange).block();
+        clock.advance(Duration.ofMinutes(3));
+        filter.filter(request(), exchange).block();
+
+        assertThat(sentTokens).containsExactly("Bearer token-1", "Bearer token-1");
+        verify(manager, times(1)).authorize(any(OAuth2AuthorizeRequest.class));
+    }
+
+    @Test
+    void filter_nearExpiry_refreshesInBackgroundWithoutWaiting() {
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class))).thenReturn(authorizedClient("token-1", Duration.ofMinutes(5)));
+        filter.filter(request(), exchange).block();
+
+        // Сервер авторизации отвечает медленно: запрос уходит со старым токеном, не дожидаясь нового
+        Sinks.One<OAuth2AuthorizedClient> slowResponse = Sinks.one();
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class))).thenReturn(slowResponse.asMono());
+        clock.advance(Duration.ofMinutes(4).plusSeconds(30));
+
+        StepVerifier.create(filter.filter(request(), exchange)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(filter.filter(request(), exchange)).expectNextCount(1).verifyComplete();
+        assertThat(sentTokens).containsOnly("Bearer token-1");
+        verify(manager, times(2)).authorize(any(OAuth2AuthorizeRequest.class)); // второе обновление объединено с первым
+
+        slowResponse.tryEmitValue(authorizedClient("token-2", Duration.ofMinutes(5)).block());
+        filter.filter(request(), exchange).block();
+
+        assertThat(sentTokens).last().isEqualTo("Bearer token-2");
+    }
+
+    @Test
+    void filter_concurrentColdRequests_shareOneAuthorization() {
+        Sinks.One<OAuth2AuthorizedClient> response = Sinks.one();
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class))).thenReturn(response.asMono());
+
+        StepVerifier.create(Mono.zip(filter.filter(request(), exchange), filter.filter(request(), exchange)))
+                .then(() -> response.tryEmitValue(authorizedClient("token-1", Duration.ofMinutes(5)).block()))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertThat(sentTokens).containsExactly("Bearer token-1", "Bearer token-1");
+        verify(manager, times(1)).authorize(any(OAuth2AuthorizeRequest.class));
+    }
+
+    @Test
+    void filter_unauthorizedResponse_dropsToken() {
+        when(authorizedClientService.removeAuthorizedClient("store", "system")).thenReturn(Mono.empty());
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(authorizedClient("token-1", Duration.ofMinutes(5)), authorizedClient("token-2", Duration.ofMinutes(5)));
+        responseStatus = HttpStatus.UNAUTHORIZED;
+        filter.filter(request(), exchange).block();
+
+        responseStatus = HttpStatus.OK;
+        filter.filter(request(), exchange).block();
+
+        assertThat(sentTokens).containsExactly("Bearer token-1", "Bearer token-2");
+    }
+
+    @Test
+    void filter_unauthorizedResponse_removesStaleClientFromService() {
+        // Менеджер возвращает сохранённый (отозванный) клиент, пока его не удалят из сервиса
+        AtomicBoolean removed = new AtomicBoolean();
+        OAuth2AuthorizedClient stale = authorizedClient("token-1", Duration.ofMinutes(5)).block();
+        OAuth2AuthorizedClient fresh = authorizedClient("token-2", Duration.ofMinutes(5)).block();
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenAnswer(invocation -> Mono.just(removed.get() ? fresh : stale));
+        when(authorizedClientService.removeAuthorizedClient("store", "system"))
+                .thenReturn(Mono.fromRunnable(() -> removed.set(true)));
+        responseStatus = HttpStatus.UNAUTHORIZED;
+        filter.filter(request(), exchange).block();
+
+        responseStatus = HttpStatus.OK;
+        filter.filter(request(), exchange).block();
+
+        assertThat(sentTokens).containsExactly("Bearer token-1", "Bearer token-2");
+        verify(authorizedClientService).removeAuthorizedClient("store", "system");
+    }
+
+    @Test
+    void filter_unauthorizedResponse_removalFails_stillDropsLocalToken() {
+        when(authorizedClientService.removeAuthorizedClient("store", "system"))
+                .thenReturn(Mono.error(new IllegalStateException("redis down")));
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(authorizedClient("token-1", Duration.ofMinutes(5)), authorizedClient("token-2", Duration.ofMinutes(5)));
+        responseStatus = HttpStatus.UNAUTHORIZED;
+
+        StepVerifier.create(filter.filter(request(), exchange))
+                .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.UNAUTHORIZED))
+                .verifyComplete();
+
+        responseStatus = HttpStatus.OK;
+        filter.filter(request(), exchange).block();
+
+        assertThat(sentTokens).containsExactly("Bearer token-1", "Bearer token-2");
+    }
+
+    @Test
+    void filter_authorizationFails_propagatesError() {
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class))).thenReturn(Mono.error(new IllegalStateException("keycloak down")));
+
+        StepVerifier.create(filter.filter(request(), exchange))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertThat(sentTokens).isEmpty();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
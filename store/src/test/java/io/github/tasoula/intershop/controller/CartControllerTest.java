@@ -1,5 +1,6 @@
 package io.github.tasoula.intershop.controller;
 
+import io.github.tasoula.intershop.dto.CartView;
 import io.github.tasoula.intershop.dto.ProductDto;
 import io.github.tasoula.intershop.model.User;
 import io.github.tasoula.intershop.service.CartService;
@@ -16,7 +17,6 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
@@ -62,9 +62,8 @@ class CartControllerTest {
                                                 2));
         BigDecimal total = BigDecimal.valueOf(200.0);
 
-        when(cartService.findByUserId(userId)).thenReturn(Flux.fromIterable(items));
-        when(cartService.calculateTotalPriceByUserId(userId)).thenReturn(Mono.just(total));
-        when(cartService.isAvailable(userId)).thenReturn(Mono.just(true));
+        when(cartService.getCartView(userId)).thenReturn(Mono.just(new CartView(items, total)));
+        when(cartService.isAvailable(userId, total)).thenReturn(Mono.just(true));
 
         webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
                 .get()
@@ -88,8 +87,8 @@ class CartControllerTest {
         List<ProductDto> items = List.of();
         BigDecimal total = BigDecimal.ZERO;
 
-        when(cartService.findByUserId(userId)).thenReturn(Flux.fromIterable(items));
-        when(cartService.calculateTotalPriceByUserId(userId)).thenReturn(Mono.just(total));
+        when(cartService.getCartView(userId)).thenReturn(Mono.just(new CartView(items, total)));
+        when(cartService.isAvailable(userId, total)).thenReturn(Mono.just(true));
 
         webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
                 .get()
@@ -231,6 +230,38 @@ class CartControllerTest {
         Mockito.verifyNoInteractions(cartService); // Verify that the service method was never called
     }
 
+    @Test
+    void viewCart_paymentServiceDown_showsAvailabilityUnknown() {
+        List<ProductDto> items = List.of(new ProductDto(UUID.randomUUID(), "Product 1", "Description 1",
+                BigDecimal.valueOf(100.0), 5, 1));
+
+        when(cartService.getCartView(userId)).thenReturn(Mono.just(new CartView(items, BigDecimal.valueOf(100.0))));
+        when(cartService.isAvailable(userId, BigDecimal.valueOf(100.0))).thenReturn(Mono.empty());
+
+        webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
+                .get()
+                .uri("/cart/items")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .consumeWith(result -> {
+                    String body = new String(result.getResponseBodyContent());
+                    assertTrue(body.contains("<p id=\"payment-unknown\" style=\"display:block;\">"), "availability unknown not shown");
+                    assertTrue(body.contains("<button id=\"button-new-order\" style=\"display:none;\">"), "buy button shown");
+                });
+    }
+
+    @Test
+    void isAvailable_paymentServiceDown_returnsNoContent() {
+        when(cartService.isAvailable(userId)).thenReturn(Mono.empty());
+
+        webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
+                .get()
+                .uri("/cart/is_available")
+                .exchange()
+                .expectStatus().isNoContent();
+    }
+
     @Test
     void isAvailable_redirectForUnauthentificated() {
         webTestClient.get()
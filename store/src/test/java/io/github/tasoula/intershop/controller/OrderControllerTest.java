@@ -1,13 +1,22 @@
 package io.github.tasoula.intershop.controller;
 
+import io.github.tasoula.intershop.dto.CursorPage;
+import io.github.tasoula.intershop.dto.OrderCursor;
 import io.github.tasoula.intershop.dto.OrderDto;
+import io.github.tasoula.intershop.exceptions.PaymentServiceUnavailableException;
 import io.github.tasoula.intershop.model.User;
+import io.github.tasoula.intershop.service.CheckoutIdempotencyService;
 import io.github.tasoula.intershop.service.OrderService;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -15,14 +24,22 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
 
@@ -34,6 +51,9 @@ class OrderControllerTest {
     @MockitoBean
     private OrderService orderService;
 
+    @MockitoBean
+    private CheckoutIdempotencyService checkoutIdempotency;
+
     private static UUID userId;
     private static Authentication userAuthentication;
 
@@ -48,6 +68,14 @@ class OrderControllerTest {
         userAuthentication = new UsernamePasswordAuthenticationToken(mockUser, null, mockUser.getAuthorities());
     }
 
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // Без повторов: оформление выполняется сразу
+        when(checkoutIdempotency.once(any(UUID.class), anyString(), any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<Mono<UUID>>) invocation.getArgument(2)).get());
+    }
+
     @Test
     void show_ShouldReturnOrdersViewWithOrders() throws Exception {
         OrderDto order1 = new OrderDto();
@@ -56,7 +84,8 @@ class OrderControllerTest {
         order2.setId(UUID.randomUUID());
 
         List<OrderDto> orderList = List.of(order1, order2);
-        when(orderService.getByUserId(userId)).thenReturn(Flux.fromIterable(orderList));
+        when(orderService.getByUserId(eq(userId), isNull(), isNull(), eq(10)))
+                .thenReturn(Mono.just(new CursorPage<>(new SliceImpl<>(orderList, PageRequest.of(0, 10), false), null, null)));
 
         webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
                 .get()
@@ -75,6 +104,70 @@ class OrderControllerTest {
                 });
     }
 
+    @Test
+    void show_withCursor_passesItToServiceAndRendersNextPageLink() {
+        OrderDto order = new OrderDto();
+        order.setId(UUID.randomUUID());
+        order.setCreatedAt(LocalDateTime.of(2025, 1, 1, 12, 0));
+        OrderCursor after = OrderCursor.of(1, order);
+        String next = OrderCursor.of(2, order).encode();
+        when(orderService.getByUserId(eq(userId), any(OrderCursor.class), isNull(), eq(5)))
+                .thenReturn(Mono.just(new CursorPage<>(new SliceImpl<>(List.of(order), PageRequest.of(1, 5), true), null, next)));
+
+        webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
+                .get()
+                .uri("/orders?pageSize=5&after=" + after.encode())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .consumeWith(result -> {
+                    String body = new String(result.getResponseBodyContent());
+                    assertTrue(body.contains(next), "next page cursor not found in template");
+                    assertTrue(body.contains("Страница: 1"), "page number not found in template");
+                });
+
+        ArgumentCaptor<OrderCursor> cursor = ArgumentCaptor.forClass(OrderCursor.class);
+        verify(orderService).getByUserId(eq(userId), cursor.capture(), isNull(), eq(5));
+        assertEquals(order.getId(), cursor.getValue().getId());
+        assertEquals(order.getCreatedAt(), cursor.getValue().getCreatedAt());
+    }
+
+    @Test
+    void show_withBeforeCursor_passesItAsPreviousPageAndRendersLink() {
+        OrderDto order = new OrderDto();
+        order.setId(UUID.randomUUID());
+        order.setCreatedAt(LocalDateTime.of(2025, 1, 1, 12, 0));
+        OrderCursor before = OrderCursor.of(1, order);
+        String previous = OrderCursor.of(0, order).encode();
+        when(orderService.getByUserId(eq(userId), isNull(), any(OrderCursor.class), eq(10)))
+                .thenReturn(Mono.just(new CursorPage<>(new SliceImpl<>(List.of(order), PageRequest.of(1, 10), true), previous, null)));
+
+        webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
+                .get()
+                .uri("/orders?before=" + before.encode())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .consumeWith(result -> assertTrue(new String(result.getResponseBodyContent()).contains(previous),
+                        "previous page cursor not found in template"));
+
+        verify(orderService).getByUserId(eq(userId), isNull(), any(OrderCursor.class), eq(10));
+    }
+
+    @Test
+    void show_arbitraryPageSize_isClampedToSelectorValues() {
+        when(orderService.getByUserId(eq(userId), isNull(), isNull(), anyInt()))
+                .thenReturn(Mono.just(new CursorPage<>(new SliceImpl<>(List.of(), PageRequest.of(0, 50), false), null, null)));
+
+        webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
+                .get()
+                .uri("/orders?pageSize=100000")
+                .exchange()
+                .expectStatus().isOk();
+
+        verify(orderService).getByUserId(eq(userId), isNull(), isNull(), eq(50));
+    }
+
     @Test
     void showOrder_ShouldReturnOrderViewWithOrder() throws Exception {
         UUID orderId = UUID.randomUUID();
@@ -152,6 +245,39 @@ class OrderControllerTest {
                  .expectHeader().valueEquals("Location", "/cart/items");
     }
 
+    @Test
+    void createOrder_passesIdempotencyKeyFromForm() {
+        UUID orderId = UUID.randomUUID();
+        when(orderService.createOrder(userId)).thenReturn(Mono.just(orderId));
+
+        webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
+                .mutateWith(csrf())
+                .post()
+                .uri("/orders/new")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .bodyValue("idempotencyKey=checkout-1")
+                .exchange()
+                .expectStatus().is3xxRedirection()
+                .expectHeader().valueEquals("Location", "/orders/" + orderId + "?newOrder=true");
+
+        verify(checkoutIdempotency).once(eq(userId), eq("checkout-1"), any());
+    }
+
+    @Test
+    void createOrder_paymentServiceUnavailable_showsFriendlyError() {
+        when(orderService.createOrder(userId)).thenReturn(Mono.error(
+                new PaymentServiceUnavailableException("Сервис оплаты временно недоступен", null)));
+
+        webTestClient.mutateWith(SecurityMockServerConfigurers.mockAuthentication(userAuthentication))
+                .mutateWith(csrf())
+                .post()
+                .uri("/orders/new")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectBody(String.class)
+                .value(body -> assertTrue(body.contains("Оплата временно недоступна")));
+    }
+
     @Test
     void show_redirectForUnauthentificated() {
         webTestClient.get()
@@ -1,6 +1,9 @@
 package io.github.tasoula.intershop.controller;
 
+import io.github.tasoula.intershop.dto.CatalogCursor;
+import io.github.tasoula.intershop.dto.CursorPage;
 import io.github.tasoula.intershop.dto.ProductDto;
+import io.github.tasoula.intershop.enums.CatalogSort;
 import io.github.tasoula.intershop.model.User;
 import io.github.tasoula.intershop.service.ProductService;
 import org.junit.jupiter.api.BeforeAll;
@@ -26,7 +29,11 @@ import java.util.UUID;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -74,7 +81,7 @@ class ProductControllerTest {
         List<ProductDto> productList = List.of(product1, product2);
         Mono<Page<ProductDto>> productPage = Mono.just(new PageImpl<>(productList,
                 PageRequest.of(pageNumber, pageSize,
-                        Sort.by(ProductController.TITLE).ascending()),
+                        Sort.by(CatalogSort.TITLE_COLUMN).ascending()),
                 productList.size()));
 
         when(productService.findAll(any(), eq(search), any(Pageable.class))).thenReturn(productPage);
@@ -122,6 +129,78 @@ class ProductControllerTest {
                 .expectStatus().isOk();
     }
 
+    @Test
+    void showItems_withoutSearch_rendersKeysetNextLink() {
+        ProductDto product = new ProductDto(UUID.randomUUID(), "Product A", "desc", BigDecimal.TEN, 5, 0);
+        String expectedCursor = CatalogCursor.of(CatalogSort.ALPHA, 1, product).encode();
+
+        when(productService.findAll(any(), any(), any(Pageable.class)))
+                .thenReturn(Mono.just(new PageImpl<>(List.of(product), PageRequest.of(0, 1), 2)));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/catalog/items")
+                        .queryParam("sort", "ALPHA")
+                        .queryParam("pageSize", "1")
+                        .build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .consumeWith(result -> {
+                    String body = result.getResponseBody();
+                    assertNotNull(body);
+                    assertTrue(body.contains("name=\"after\" value=\"" + expectedCursor + "\""), "keyset next link not found in template");
+                });
+    }
+
+    @Test
+    void showItems_withAfterCursor_usesKeysetPaging() {
+        ProductDto lastOnPrevious = new ProductDto(UUID.randomUUID(), "Product A", "desc", BigDecimal.TEN, 5, 0);
+        ProductDto product = new ProductDto(UUID.randomUUID(), "Product B", "desc", BigDecimal.TEN, 5, 0);
+        String after = CatalogCursor.of(CatalogSort.ALPHA, 1, lastOnPrevious).encode();
+
+        when(productService.findAllByCursor(any(), any(CatalogCursor.class), isNull(), eq(1)))
+                .thenReturn(Mono.just(CursorPage.of(CatalogSort.ALPHA,
+                        new SliceImpl<>(List.of(product), PageRequest.of(1, 1), false))));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/catalog/items")
+                        .queryParam("sort", "ALPHA")
+                        .queryParam("pageSize", "1")
+                        .queryParam("after", after)
+                        .build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .consumeWith(result -> {
+                    String body = result.getResponseBody();
+                    assertNotNull(body);
+                    assertTrue(body.contains(product.getTitle()), "product not found in template");
+                    assertTrue(body.contains("name=\"before\""), "keyset previous link not found in template");
+                    assertTrue(body.contains("Страница: 1"), "page number not found in template");
+                });
+
+        verify(productService, never()).findAll(any(), any(), any(Pageable.class));
+    }
+
+    @Test
+    void showItems_withInvalidCursor_showsFirstPage() {
+        when(productService.findAll(any(), any(), any(Pageable.class)))
+                .thenReturn(Mono.just(new PageImpl<>(List.of(), PageRequest.of(0, 10), 0)));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/catalog/items")
+                        .queryParam("after", "not-a-cursor")
+                        .build())
+                .exchange()
+                .expectStatus().isOk();
+
+        verify(productService).findAll(any(), isNull(), eq(PageRequest.of(0, 10, CatalogSort.NO.toSort())));
+        verify(productService, never()).findAllByCursor(any(), any(), any(), anyInt());
+    }
+
     @Test
     void showItemById_withValidId_returnsItemHtml() {
         UUID itemId = UUID.randomUUID();
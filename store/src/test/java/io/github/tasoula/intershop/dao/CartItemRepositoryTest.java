@@ -1,11 +1,13 @@
 package io.github.tasoula.intershop.dao;
 
+import io.github.tasoula.intershop.dto.ProductDto;
 import io.github.tasoula.intershop.model.CartItem;
 import io.github.tasoula.intershop.model.Product;
 import io.github.tasoula.intershop.model.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
@@ -51,6 +53,7 @@ public class CartItemRepositoryTest extends SpringBootPostgreSQLBase {
         Product product1 = new Product();
         product1.setTitle("Product 1");
         product1.setPrice(BigDecimal.valueOf(10.00));
+        product1.setStockQuantity(5);
         product1 = productRepository.save(product1).block();
         productId1 = product1.getId();
 
@@ -87,6 +90,19 @@ public class CartItemRepositoryTest extends SpringBootPostgreSQLBase {
          assertThat(foundItem).isNull();
     }
 
+    @Test
+    void findByUserIdAndProductIdIn_ShouldReturnOnlyRequestedProducts() {
+        cartItemRepository.saveAll(List.of(cartItem1, cartItem2)).blockLast();
+
+        List<CartItem> cartItems = cartItemRepository.findByUserIdAndProductIdIn(userId1, List.of(productId1, UUID.randomUUID()))
+                .collectList().block();
+
+        assertThat(cartItems).isNotNull();
+        assertThat(cartItems).hasSize(1);
+        assertThat(cartItems.getFirst().getProductId()).isEqualTo(productId1);
+        assertThat(cartItems.getFirst().getQuantity()).isEqualTo(2);
+    }
+
     @Test
     void findByUserId_ShouldReturnAllCartItemsForUser() {
         cartItemRepository.saveAll(List.of(cartItem1, cartItem2)).blockLast();
@@ -123,6 +139,22 @@ public class CartItemRepositoryTest extends SpringBootPostgreSQLBase {
         assertThat(cartItems.get(0).getCreatedAt()).isAfter(cartItems.get(1).getCreatedAt());
     }
 
+    @Test
+    void findCartProductsByUserId_ShouldJoinProductsOrderedByCreatedAtDesc() {
+        cartItem1.setCreatedAt(Timestamp.from(Instant.now().minusSeconds(5))); // Старый
+        cartItem2.setCreatedAt(Timestamp.from(Instant.now().minusSeconds(1))); // Новый
+        cartItemRepository.saveAll(List.of(cartItem1, cartItem2)).blockLast();
+
+        List<ProductDto> products = cartItemRepository.findCartProductsByUserId(userId1).collectList().block();
+
+        assertThat(products).isNotNull();
+        assertThat(products).extracting(ProductDto::getId).containsExactly(productId2, productId1);
+        assertThat(products.get(0).getTitle()).isEqualTo("Product 2");
+        assertThat(products.get(0).getQuantity()).isEqualTo(1);
+        assertThat(products.get(1).getPrice()).isEqualByComparingTo(BigDecimal.valueOf(10.00));
+        assertThat(products.get(1).getStockQuantity()).isEqualTo(5);
+        assertThat(products.get(1).getQuantity()).isEqualTo(2);
+    }
 
     @Test
     void deleteByUserIdAndProductId_ShouldDeleteCartItem() {
@@ -178,4 +210,58 @@ public class CartItemRepositoryTest extends SpringBootPostgreSQLBase {
         assertThat(cartItems).isNotNull();
         assertThat(cartItems).isEmpty();
     }
+
+    @Test
+    void addQuantity_insertsThenIncrementsClampedToStock() {
+        assertThat(cartItemRepository.addQuantity(userId1, productId1, 3).block()).isEqualTo(3);
+        assertThat(cartItemRepository.addQuantity(userId1, productId1, 4).block()).isEqualTo(5); // остаток - 5
+
+        assertThat(cartItemRepository.findByUserId(userId1).collectList().block())
+                .singleElement()
+                .extracting(CartItem::getQuantity)
+                .isEqualTo(5);
+    }
+
+    @Test
+    void addQuantity_unknownProduct_returnsEmpty() {
+        assertThat(cartItemRepository.addQuantity(userId1, UUID.randomUUID(), 1).block()).isNull();
+    }
+
+    @Test
+    void addQuantity_concurrentClicks_keepSingleRow() {
+        Flux.range(0, 10)
+                .flatMap(i -> cartItemRepository.addQuantity(userId1, productId1, 1))
+                .blockLast();
+
+        assertThat(cartItemRepository.findByUserId(userId1).collectList().block())
+                .singleElement()
+                .extracting(CartItem::getQuantity)
+                .isEqualTo(5);
+    }
+
+    @Test
+    void subtractQuantity_decrementsAndDeletesAtZero() {
+        cartItemRepository.save(cartItem1).block(); // количество 2
+
+        assertThat(cartItemRepository.subtractQuantity(userId1, productId1, -1).block()).isEqualTo(1);
+        assertThat(cartItemRepository.subtractQuantity(userId1, productId1, -1).block()).isZero();
+
+        assertThat(cartItemRepository.findByUserIdAndProductId(userId1, productId1).block()).isNull();
+    }
+
+    @Test
+    void upsertAll_andDeleteNotIn_replaceUserCart() {
+        cartItemRepository.save(cartItem2).block(); // позиция, которой больше нет в корзине
+        UUID[] productIds = {productId1};
+
+        cartItemRepository.upsertAll(userId1, productIds, new Integer[]{4}, new Long[]{System.currentTimeMillis()}).block();
+        cartItemRepository.deleteByUserIdAndProductIdNotIn(userId1, productIds).block();
+
+        assertThat(cartItemRepository.findByUserId(userId1).collectList().block())
+                .singleElement()
+                .satisfies(item -> {
+                    assertThat(item.getProductId()).isEqualTo(productId1);
+                    assertThat(item.getQuantity()).isEqualTo(4);
+                });
+    }
 }
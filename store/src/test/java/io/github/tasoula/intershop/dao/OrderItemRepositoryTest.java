@@ -99,4 +99,14 @@ class OrderItemRepositoryTest extends SpringBootPostgreSQLBase{
                 .withFailMessage("Заказы не должны быть найдены")
                 .isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void findMostOrderedProductIds_orderedByTotalQuantity() {
+        orderItem2.setQuantity(7);
+        orderItemRepository.saveAll(List.of(orderItem1, orderItem2)).blockLast();
+
+        var productIds = orderItemRepository.findMostOrderedProductIds(1).collectList().block();
+
+        assertThat(productIds).containsExactly(orderItem2.getProductId());
+    }
+}
@@ -1,6 +1,15 @@
 package io.github.tasoula.intershop.dao;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.tasoula.intershop.dto.OrderSnapshot;
+import io.github.tasoula.intershop.dto.OrderSnapshotRow;
+import io.github.tasoula.intershop.dto.ProductDto;
+import io.github.tasoula.intershop.enums.OrderStatus;
+import io.github.tasoula.intershop.model.CartItem;
 import io.github.tasoula.intershop.model.Order;
+import io.github.tasoula.intershop.model.OrderItem;
+import io.github.tasoula.intershop.model.PaymentOutbox;
+import io.github.tasoula.intershop.model.Product;
 import io.github.tasoula.intershop.model.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +24,7 @@ import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 class OrderRepositoryTest extends SpringBootPostgreSQLBase{
     @Autowired
     private OrderRepository orderRepository;
@@ -22,6 +32,18 @@ class OrderRepositoryTest extends SpringBootPostgreSQLBase{
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private PaymentOutboxRepository paymentOutboxRepository;
+
     private UUID userId1;
     private UUID userId2;
 
@@ -31,7 +53,8 @@ class OrderRepositoryTest extends SpringBootPostgreSQLBase{
     @BeforeEach
     void setUp() {
         orderRepository.deleteAll().block();
-        userRepository.deleteAll().block();
+        userRepository.deleteAll().block(); // вместе с корзинами
+        productRepository.deleteAll().block();
 
         User user1 =  new User();
         user1.setUserName("user1");
@@ -85,5 +108,126 @@ class OrderRepositoryTest extends SpringBootPostgreSQLBase{
         assertThat(savedOrder.getTotalAmount()).isEqualByComparingTo(order1.getTotalAmount());
     }
 
+    private Product product(String title, String price, int stock) {
+        Product product = new Product();
+        product.setTitle(title);
+        product.setPrice(new BigDecimal(price));
+        product.setStockQuantity(stock);
+        return productRepository.save(product).block();
+    }
+
+    private void addToCart(UUID productId, int quantity) {
+        CartItem item = new CartItem(userId1, productId);
+        item.setQuantity(quantity);
+        cartItemRepository.save(item).block();
+    }
+
+    @Test
+    void checkout_movesCartIntoOrderAndDecrementsStock() {
+        Product phone = product("Phone", "25.00", 10);
+        Product lamp = product("Lamp", "50.00", 5);
+        addToCart(phone.getId(), 2);
+        addToCart(lamp.getId(), 1);
+        UUID orderId = UUID.randomUUID();
+
+        List<Product> reserved = orderRepository.checkout(orderId, userId1).collectList().block();
+
+        assertThat(reserved).extracting(Product::getId, Product::getStockQuantity)
+                .containsExactlyInAnyOrder(
+                        tuple(phone.getId(), 8),
+                        tuple(lamp.getId(), 4));
+
+        Order order = orderRepository.findById(orderId).block();
+        assertThat(order).isNotNull();
+        assertThat(order.getUserId()).isEqualTo(userId1);
+        assertThat(order.getTotalAmount()).isEqualByComparingTo("100.00");
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.PENDING_PAYMENT);
+
+        assertThat(orderItemRepository.findByOrderId(orderId).collectList().block())
+                .extracting(OrderItem::getProductId, OrderItem::getQuantity)
+                .containsExactlyInAnyOrder(
+                        tuple(phone.getId(), 2),
+                        tuple(lamp.getId(), 1));
+
+        List<PaymentOutbox> payments = paymentOutboxRepository.findAll().collectList().block();
+        assertThat(payments).hasSize(1);
+        assertThat(payments.get(0).getOrderId()).isEqualTo(orderId);
+        assertThat(payments.get(0).getAmount()).isEqualByComparingTo("100.00");
+    }
+
+    @Test
+    void checkout_notEnoughStock_createsNoOrder() {
+        Product lamp = product("Lamp", "50.00", 1);
+        addToCart(lamp.getId(), 2);
+        UUID orderId = UUID.randomUUID();
+
+        List<Product> reserved = orderRepository.checkout(orderId, userId1).collectList().block();
+
+        assertThat(reserved).isEmpty();
+        assertThat(orderRepository.findById(orderId).block()).isNull();
+        assertThat(productRepository.findById(lamp.getId()).block().getStockQuantity()).isEqualTo(1);
+        assertThat(paymentOutboxRepository.count().block()).isZero();
+    }
+
+    @Test
+    void checkout_writesSnapshotThatSurvivesProductChanges() throws Exception {
+        Product phone = product("Phone", "25.00", 10);
+        Product lamp = product("Lamp", "50.00", 5);
+        addToCart(phone.getId(), 2);
+        addToCart(lamp.getId(), 1);
+        UUID orderId = UUID.randomUUID();
+        orderRepository.checkout(orderId, userId1).blockLast();
+
+        // Товар переименован и подорожал после оформления - снимок заказа не меняется
+        phone.setTitle("Phone 2");
+        phone.setPrice(new BigDecimal("99.00"));
+        productRepository.save(phone).block();
+
+        OrderSnapshotRow row = orderRepository.findSnapshotById(orderId).block();
+
+        assertThat(row).isNotNull();
+        assertThat(row.getStatus()).isEqualTo(OrderStatus.PENDING_PAYMENT);
+        assertThat(row.getCreatedAt()).isNotNull();
+        OrderSnapshot snapshot = new ObjectMapper().readValue(row.getSnapshot(), OrderSnapshot.class);
+        assertThat(snapshot.getTotalAmount()).isEqualByComparingTo("100.00");
+        assertThat(snapshot.getItems())
+                .extracting(ProductDto::getId, ProductDto::getTitle, ProductDto::getQuantity)
+                .containsExactlyInAnyOrder(
+                        tuple(phone.getId(), "Phone", 2),
+                        tuple(lamp.getId(), "Lamp", 1));
+        assertThat(snapshot.getItems()).filteredOn(item -> item.getId().equals(phone.getId()))
+                .singleElement()
+                .satisfies(item -> assertThat(item.getPrice()).isEqualByComparingTo("25.00"));
+    }
 
-}
\ No newline at end of file
+    @Test
+    void findSnapshotsByUserId_pagesOrdersNewestFirst() {
+        Product phone = product("Phone", "25.00", 10);
+        UUID[] orderIds = new UUID[3];
+        for (int i = 0; i < orderIds.length; i++) {
+            addToCart(phone.getId(), 1);
+            orderIds[i] = UUID.randomUUID();
+            orderRepository.checkout(orderIds[i], userId1).blockLast();
+            cartItemRepository.deleteByUserId(userId1).block();
+        }
+
+        List<OrderSnapshotRow> firstPage = orderRepository.findSnapshotsByUserId(userId1, 2).collectList().block();
+        assertThat(firstPage).extracting(OrderSnapshotRow::getOrderId)
+                .containsExactly(orderIds[2], orderIds[1]);
+
+        OrderSnapshotRow last = firstPage.getLast();
+        List<OrderSnapshotRow> secondPage = orderRepository
+                .findSnapshotsByUserIdBefore(userId1, last.getCreatedAt(), last.getOrderId(), 2)
+                .collectList().block();
+        assertThat(secondPage).extracting(OrderSnapshotRow::getOrderId)
+                .containsExactly(orderIds[0]);
+
+        // Обратно к новым заказам: от курсора вверх, ближайшие к нему - первыми
+        OrderSnapshotRow oldest = secondPage.getFirst();
+        assertThat(orderRepository.findSnapshotsByUserIdAfter(userId1, oldest.getCreatedAt(), oldest.getOrderId(), 2)
+                .collectList().block())
+                .extracting(OrderSnapshotRow::getOrderId)
+                .containsExactly(orderIds[1], orderIds[2]);
+        assertThat(orderRepository.findSnapshotsByUserId(userId2, 2).collectList().block()).isEmpty();
+    }
+}
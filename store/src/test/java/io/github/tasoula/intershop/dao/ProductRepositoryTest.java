@@ -7,11 +7,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
 import java.util.List;
 
-import static io.github.tasoula.intershop.controller.ProductController.TITLE;
+import static io.github.tasoula.intershop.enums.CatalogSort.PRICE_COLUMN;
+import static io.github.tasoula.intershop.enums.CatalogSort.TITLE_COLUMN;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -71,11 +73,10 @@ class ProductRepositoryTest extends SpringBootPostgreSQLBase{
     }
 
     @Test
-    void findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan_ShouldReturnMatchingProducts() {
-        Pageable pageable = PageRequest.of(0, 10, Sort.by(TITLE).ascending());
+    void search_ShouldReturnMatchingProducts() {
         String searchTerm = "Another";
         var matchingProducts = productRepository.saveAll(List.of(product1, product2, product3))
-                .thenMany(productRepository.findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(searchTerm, searchTerm, 0, pageable))
+                .thenMany(productRepository.search("%" + searchTerm + "%", searchTerm, TITLE_COLUMN, 10, 0))
                 .toIterable();
 
         assertThat(matchingProducts)
@@ -89,6 +90,74 @@ class ProductRepositoryTest extends SpringBootPostgreSQLBase{
                 .isEqualTo(product2.getTitle());
     }
 
+    @Test
+    void search_ShouldIgnoreCaseAndExcludeOutOfStockProducts() {
+        // "product" есть в названии всех трёх товаров, но product3 закончился
+        var matchingProducts = productRepository.saveAll(List.of(product1, product2, product3))
+                .thenMany(productRepository.search("%PRODUCT%", "PRODUCT", "", 10, 0))
+                .collectList()
+                .block();
+
+        assertThat(matchingProducts)
+                .extracting(Product::getTitle)
+                .containsExactlyInAnyOrder(product1.getTitle(), product2.getTitle());
+    }
+
+    @Test
+    void search_ShouldSortAndPage() {
+        var page = productRepository.saveAll(List.of(product1, product2, product3))
+                .thenMany(productRepository.search("%product%", "product", PRICE_COLUMN, 1, 1))
+                .collectList()
+                .block();
+
+        assertThat(page)
+                .extracting(Product::getTitle)
+                .containsExactly(product2.getTitle());
+    }
+
+    @Test
+    void countSearch_ShouldCountOnlyMatchingProductsInStock() {
+        Long count = productRepository.saveAll(List.of(product1, product2, product3))
+                .then(productRepository.countSearch("%product%"))
+                .block();
+
+        assertThat(count).isEqualTo(2L);
+    }
+
+    @Test
+    void countByStockQuantityGreaterThan_ShouldCountOnlyProductsInStock() {
+        Long count = productRepository.saveAll(List.of(product1, product2, product3))
+                .then(productRepository.countByStockQuantityGreaterThan(0))
+                .block();
+
+        assertThat(count).isEqualTo(2L);
+    }
+
+    @Test
+    void findInStockAfterPrice_ShouldReturnNextRowsInPriceOrder() {
+        productRepository.saveAll(List.of(product1, product2, product3)).blockLast();
+
+        var page = productRepository.findInStockAfterPrice(product1.getPrice(), product1.getId(), 10)
+                .collectList()
+                .block();
+
+        assertThat(page)
+                .extracting(Product::getTitle)
+                .containsExactly(product2.getTitle());
+    }
+
+    @Test
+    void findInStockBeforeTitle_ShouldReturnPreviousRowsInReverseOrder() {
+        productRepository.saveAll(List.of(product1, product2, product3)).blockLast();
+
+        var page = productRepository.findInStockBeforeTitle(product2.getTitle(), product2.getId(), 10)
+                .collectList()
+                .block();
+
+        assertThat(page)
+                .extracting(Product::getTitle)
+                .containsExactly(product1.getTitle());
+    }
 
     @Test
     void findImgPathById_ShouldReturnCorrectPath() {
@@ -102,4 +171,13 @@ class ProductRepositoryTest extends SpringBootPostgreSQLBase{
                 .withFailMessage("Файл изображения должен быть")
                 .isEqualTo(product1.getImgPath());
     }
-}
\ No newline at end of file
+
+    @Test
+    void addStock_ShouldIncreaseStock() {
+        Product saved = productRepository.save(product3).block(); // 0 шт.
+
+        StepVerifier.create(productRepository.addStock(saved.getId(), 4))
+                .assertNext(product -> assertThat(product.getStockQuantity()).isEqualTo(4))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.OrderItemRepository;
+import io.github.tasoula.intershop.enums.CatalogSort;
+import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
+import io.github.tasoula.intershop.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CacheWarmUpServiceTest {
+
+    @Mock
+    private ProductDataService productDataService;
+    @Mock
+    private OrderItemRepository orderItemRepository;
+
+    private CacheWarmUpService service(Duration timeout) {
+        return new CacheWarmUpService(productDataService, orderItemRepository, true, List.of(10, 20), 5, timeout);
+    }
+
+    @Test
+    void warmUp_loadsFirstPageForEverySortAndSizeAndHotProducts() {
+        UUID hot1 = UUID.randomUUID();
+        UUID hot2 = UUID.randomUUID();
+        when(productDataService.findAll(isNull(), any(Pageable.class))).thenReturn(Mono.just(List.of()));
+        when(productDataService.count(null)).thenReturn(Mono.just(0L));
+        when(orderItemRepository.findMostOrderedProductIds(5)).thenReturn(Flux.just(hot1, hot2));
+        when(productDataService.findById(hot1)).thenReturn(Mono.just(new Product()));
+        when(productDataService.findById(hot2)).thenReturn(Mono.error(new ResourceNotFoundException("deleted")));
+
+        StepVerifier.create(service(Duration.ofSeconds(5)).warmUp())
+                .verifyComplete();
+
+        for (CatalogSort sort : CatalogSort.values()) {
+            verify(productDataService).findAll(null, PageRequest.of(0, 10, sort.toSort()));
+            verify(productDataService).findAll(null, PageRequest.of(0, 20, sort.toSort()));
+        }
+        // Следующие страницы каталог без поиска читает по курсору, прогревать их через OFFSET бесполезно
+        verify(productDataService, times(CatalogSort.values().length * 2)).findAll(isNull(), any(Pageable.class));
+        verify(productDataService).findById(hot1);
+        verify(productDataService).findById(hot2);
+    }
+
+    @Test
+    void onApplicationReady_marksFinishedAfterWarmUp() {
+        when(productDataService.findAll(isNull(), any(Pageable.class))).thenReturn(Mono.just(List.of()));
+        when(productDataService.count(null)).thenReturn(Mono.just(0L));
+        when(orderItemRepository.findMostOrderedProductIds(5)).thenReturn(Flux.empty());
+        CacheWarmUpService service = service(Duration.ofSeconds(5));
+
+        assertFalse(service.isFinished());
+        service.onApplicationReady();
+
+        assertTrue(service.isFinished());
+    }
+
+    @Test
+    void onApplicationReady_budgetExceeded_marksFinished() throws InterruptedException {
+        when(productDataService.findAll(isNull(), any(Pageable.class))).thenReturn(Mono.never());
+        when(orderItemRepository.findMostOrderedProductIds(5)).thenReturn(Flux.empty());
+        CacheWarmUpService service = service(Duration.ofMillis(50));
+
+        service.onApplicationReady();
+        Thread.sleep(300);
+
+        assertTrue(service.isFinished());
+    }
+
+    @Test
+    void onApplicationReady_disabled_finishedImmediately() {
+        CacheWarmUpService service = new CacheWarmUpService(productDataService, orderItemRepository, false, List.of(10), 5, Duration.ofSeconds(5));
+
+        service.onApplicationReady();
+
+        assertTrue(service.isFinished());
+        verifyNoInteractions(productDataService, orderItemRepository);
+    }
+}
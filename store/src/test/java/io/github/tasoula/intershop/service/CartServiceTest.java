@@ -1,6 +1,12 @@
 package io.github.tasoula.intershop.service;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.tasoula.client.domain.Amount;
+import io.github.tasoula.intershop.cache.BalanceCache;
+import io.github.tasoula.intershop.cache.CacheInvalidationBus;
+import io.github.tasoula.intershop.config.ClientCredentialsTokenFilter;
 import io.github.tasoula.intershop.dao.CartItemRepository;
+import io.github.tasoula.intershop.dto.ProductDto;
 import io.github.tasoula.intershop.model.Product;
 import io.github.tasoula.intershop.model.CartItem;
 import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
@@ -21,6 +27,7 @@ import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
@@ -35,13 +42,18 @@ import reactor.test.StepVerifier;
 import javax.security.sasl.AuthenticationException;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.times;
 
@@ -51,9 +63,6 @@ class CartServiceTest  {
     @Mock
     private CartItemRepository cartItemRepository;
 
-    @Mock
-    private ProductDataService productDataService;
-
     @Mock
     private  ReactiveOAuth2AuthorizedClientManager manager;
 
@@ -64,6 +73,8 @@ class CartServiceTest  {
 
     private WebClient webClient;
 
+    private CircuitBreaker circuitBreaker;
+
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -84,13 +95,19 @@ class CartServiceTest  {
         mockWebServer = new MockWebServer();
         mockWebServer.start();
 
+        circuitBreaker = CircuitBreaker.ofDefaults("balance");
+
         String baseUrl = mockWebServer.url("/").toString();
-        webClient = WebClient.builder().baseUrl(baseUrl).build();
+        webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .filter(new ClientCredentialsTokenFilter(manager, Mockito.mock(ReactiveOAuth2AuthorizedClientService.class), "store", Duration.ofSeconds(60), Clock.systemUTC()))
+                .build();
         cartService = new CartService(
-                cartItemRepository,
-                productDataService,
+                new DatabaseCartStore(cartItemRepository),
                 webClient,
-                manager); // Re-inject dependencies
+                new BalanceCache(mock(CacheInvalidationBus.class), Duration.ofSeconds(30), 100),
+                circuitBreaker,
+                Bulkhead.ofDefaults("balance")); // Re-inject dependencies
     }
 
     @AfterEach
@@ -101,161 +118,97 @@ class CartServiceTest  {
 
     @Test
     void findByUserId_shouldReturnProductDtoList() {
-        // Arrange
-        CartItem cartItem1 = new CartItem();
-        cartItem1.setUserId(userId);
-        cartItem1.setProductId(productId);
-        cartItem1.setCreatedAt(Timestamp.from(Instant.now()));
-        cartItem1.setQuantity(2);
-
-        UUID productId2 = UUID.randomUUID();
-        Product product2 = new Product();
-        product2.setId(productId2);
-        product2.setTitle("Test Product 2");
-        product2.setStockQuantity(20);
-
-        CartItem cartItem2 = new CartItem();
-        cartItem2.setUserId(userId);
-        cartItem2.setProductId(productId2);
-        cartItem2.setQuantity(3);
-        cartItem2.setCreatedAt(Timestamp.from(Instant.MIN));
-        List<CartItem> cartItems = List.of(cartItem1, cartItem2);
-
-        when(cartItemRepository.findByUserIdOrderByCreatedAtDesc(userId)).thenReturn(Flux.fromIterable(cartItems));
-        when(productDataService.findById(productId)).thenReturn(Mono.just(product));
-        when(productDataService.findById(product2.getId())).thenReturn(Mono.just(product2));
+        ProductDto productDto1 = new ProductDto(product, 2);
+        ProductDto productDto2 = new ProductDto(UUID.randomUUID(), "Test Product 2", "", BigDecimal.ONE, 20, 3);
 
+        when(cartItemRepository.findCartProductsByUserId(userId)).thenReturn(Flux.just(productDto1, productDto2));
 
         StepVerifier.create(cartService.findByUserId(userId))
-                .assertNext(productDto -> {
-                    assert productDto.getTitle().equals(product.getTitle());
-                    assert productDto.getQuantity() == cartItem1.getQuantity();
-                })
-                .assertNext(productDto -> {
-                    assert productDto.getTitle().equals(product2.getTitle());
-                    assert productDto.getQuantity() == cartItem2.getQuantity();
-                })
+                .expectNext(productDto1)
+                .expectNext(productDto2)
                 .verifyComplete();
 
-        verify(cartItemRepository).findByUserIdOrderByCreatedAtDesc(userId);
-        verify(productDataService).findById(productId);
-        verify(productDataService).findById(productId2);
+        verify(cartItemRepository).findCartProductsByUserId(userId);
+        verify(cartItemRepository, never()).findByUserIdOrderByCreatedAtDesc(any());
     }
 
-     @Test
-    void changeProductQuantityInCart_productNotFound_shouldThrowException() {
-         int changeQuantity = 2;
-
-         when(productDataService.findById(productId)).thenReturn(Mono.empty());
-
-         Mono<Integer> result = cartService.changeProductQuantityInCart(userId, productId, changeQuantity);
-
-         StepVerifier.create(result)
-                 .expectError(ResourceNotFoundException.class)
-                 .verify();
-
-         verify(cartItemRepository, never()).save(any(CartItem.class));
-         verify(cartItemRepository, never()).deleteByUserIdAndProductId(any(), any());
-       }
-
-   @Test
-    void changeProductQuantityInCart_cartItemNotFound_shouldCreateNewCartItem() {
-       int changeQuantity = 3;
-       int expectedQuantity = changeQuantity; // Initial quantity equals to changeQuantity because cart item doesn't exist
-
-       when(productDataService.findById(productId)).thenReturn(Mono.just(product));
-       when(cartItemRepository.findByUserIdAndProductId(userId, productId)).thenReturn(Mono.empty());
-       when(cartItemRepository.save(any(CartItem.class))).thenAnswer(invocation -> {
-           CartItem savedCartItem = invocation.getArgument(0);
-           savedCartItem.setQuantity(expectedQuantity); // Simulate the quantity update in the saved item
-           return Mono.just(savedCartItem);
-       });
-
-       Mono<Integer> result = cartService.changeProductQuantityInCart(userId, productId, changeQuantity);
-
-       StepVerifier.create(result)
-               .expectNext(expectedQuantity)
-               .verifyComplete();
+    @Test
+    void getCartView_shouldComputeTotalFromSingleQuery() {
+        product.setPrice(BigDecimal.valueOf(10));
+        ProductDto productDto1 = new ProductDto(product, 2);
+        ProductDto productDto2 = new ProductDto(UUID.randomUUID(), "Test Product 2", "", BigDecimal.valueOf(5), 20, 3);
 
-       verify(cartItemRepository, times(1)).save(argThat(item -> item.getQuantity() == expectedQuantity));
+        when(cartItemRepository.findCartProductsByUserId(userId)).thenReturn(Flux.just(productDto1, productDto2));
 
-       verify(cartItemRepository, times(1)).findByUserIdAndProductId(userId, productId);
+        StepVerifier.create(cartService.getCartView(userId))
+                .assertNext(cart -> {
+                    assertEquals(List.of(productDto1, productDto2), cart.getItems());
+                    assertEquals(0, BigDecimal.valueOf(35).compareTo(cart.getTotal())); // 2 * 10 + 3 * 5
+                })
+                .verifyComplete();
 
+        verify(cartItemRepository, never()).calculateTotalPriceByUserId(any());
     }
 
-         @Test
-    void changeProductQuantityInCart_changeQuantityIsNegativeAndResultIsZero_shouldDeleteCartItem() {
-             // Arrange
-             CartItem cartItem = new CartItem();
-             cartItem.setUserId(userId);
-             cartItem.setProductId(productId);
-             cartItem.setQuantity(2);
-             int changeQuantity = -5;
+    @Test
+    void getCartView_emptyCart_zeroTotal() {
+        when(cartItemRepository.findCartProductsByUserId(userId)).thenReturn(Flux.empty());
 
-             when(productDataService.findById(productId)).thenReturn(Mono.just(product));
-             when(cartItemRepository.findByUserIdAndProductId(userId, productId)).thenReturn(Mono.just(cartItem));
-             when(cartItemRepository.deleteByUserIdAndProductId(userId, productId)).thenReturn(Mono.empty()); // Simulate successful delete
+        StepVerifier.create(cartService.getCartView(userId))
+                .assertNext(cart -> {
+                    assertTrue(cart.isEmpty());
+                    assertEquals(BigDecimal.ZERO, cart.getTotal());
+                })
+                .verifyComplete();
+    }
 
-             Mono<Integer> result = cartService.changeProductQuantityInCart(userId, productId, changeQuantity);
+    @Test
+    void changeProductQuantityInCart_productNotFound_shouldThrowException() {
+        int changeQuantity = 2;
 
-             StepVerifier.create(result)
-                     .expectNext(0) // Expect the method to return 0 when deleting
-                     .verifyComplete();
+        when(cartItemRepository.addQuantity(userId, productId, changeQuantity)).thenReturn(Mono.empty());
 
-             verify(cartItemRepository, times(1)).deleteByUserIdAndProductId(userId, productId);
-             verify(cartItemRepository, never()).save(any(CartItem.class)); // Ensure save is not called
+        Mono<Integer> result = cartService.changeProductQuantityInCart(userId, productId, changeQuantity);
 
-         }
+        StepVerifier.create(result)
+                .expectError(ResourceNotFoundException.class)
+                .verify();
 
-      @Test
-       void changeProductQuantityInCart_changeQuantityIsPositiveAndResultExceedsStock_shouldSetQuantityToStockQuantity() {
-           // Arrange
-           Product productWithLimitedStock = new Product();
-           productWithLimitedStock.setId(productId);
-           productWithLimitedStock.setTitle("Test Product");
-           productWithLimitedStock.setStockQuantity(3);
+        verify(cartItemRepository, never()).save(any(CartItem.class));
+        verify(cartItemRepository, never()).subtractQuantity(any(), any(), anyInt());
+    }
 
-           CartItem cartItem = new CartItem(userId, productWithLimitedStock.getId());
-           cartItem.setQuantity(2);
+    @Test
+    void changeProductQuantityInCart_positiveChange_upsertsInSingleQuery() {
+        int changeQuantity = 3;
 
-          when(productDataService.findById(productWithLimitedStock.getId())).thenReturn(Mono.just(productWithLimitedStock));
-           when(cartItemRepository.findByUserIdAndProductId(userId, productId)).thenReturn(Mono.just(cartItem));
-           when(cartItemRepository.save(any(CartItem.class))).thenReturn(Mono.just(cartItem));
+        when(cartItemRepository.addQuantity(userId, productId, changeQuantity)).thenReturn(Mono.just(5));
 
-           // Act
-          Mono<Integer> newQuantity = cartService.changeProductQuantityInCart(userId, productId, 5);
+        Mono<Integer> result = cartService.changeProductQuantityInCart(userId, productId, changeQuantity);
 
-          StepVerifier.create(newQuantity)
-                  .expectNext(productWithLimitedStock.getStockQuantity())
-                  .verifyComplete();
+        StepVerifier.create(result)
+                .expectNext(5)
+                .verifyComplete();
 
-           verify(cartItemRepository, times(1)).findByUserIdAndProductId(userId, productId);
-           verify(cartItemRepository, times(1)).save(any(CartItem.class));
-       }
+        verify(cartItemRepository).addQuantity(userId, productId, changeQuantity);
+        verify(cartItemRepository, never()).findByUserIdAndProductId(any(), any());
+    }
 
-       @Test
-        void changeProductQuantityInCart_successfulUpdate() {
-            // Arrange
-            CartItem cartItem = new CartItem(userId, productId);
-            cartItem.setQuantity(2);
-           int changeQuantity = 3;
-           int expectedQuantity = cartItem.getQuantity() + changeQuantity;
+    @Test
+    void changeProductQuantityInCart_negativeChange_subtractsInSingleQuery() {
+        int changeQuantity = -1;
 
-            when(productDataService.findById(productId)).thenReturn(Mono.just(product));
-            when(cartItemRepository.findByUserIdAndProductId(userId, productId)).thenReturn(Mono.just(cartItem));
-            when(cartItemRepository.save(any(CartItem.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(cartItemRepository.subtractQuantity(userId, productId, changeQuantity)).thenReturn(Mono.just(0));
 
-            // Act
-           Mono<Integer> newQuantity = cartService.changeProductQuantityInCart(userId, productId, changeQuantity);
+        Mono<Integer> result = cartService.changeProductQuantityInCart(userId, productId, changeQuantity);
 
-           StepVerifier.create(newQuantity)
-                   .expectNext(cartItem.getQuantity() + changeQuantity)
-                   .verifyComplete();
+        StepVerifier.create(result)
+                .expectNext(0) // Позиция удалена
+                .verifyComplete();
 
-            // Assert
-            verify(cartItemRepository, times(1)).findByUserIdAndProductId(userId, productId);
-            verify(cartItemRepository, times(1)).save(cartItem);
-        }
+        verify(cartItemRepository).subtractQuantity(userId, productId, changeQuantity);
+        verify(cartItemRepository, never()).addQuantity(any(), any(), anyInt());
+    }
 
     @Test
    void calculateTotalPriceByUserId_ShouldReturnTotalPrice_WhenCartIsNotEmpty() {
@@ -355,6 +308,32 @@ class CartServiceTest  {
         verifyNoInteractions(cartItemRepository);
     }
 
+    @Test
+    void getCartQuantities_UserIsNotNull_ReturnsQuantitiesInSingleQuery() {
+        UUID productId2 = UUID.randomUUID();
+        CartItem cartItem = new CartItem(userId, productId);
+        cartItem.setQuantity(3);
+        List<UUID> productIds = List.of(productId, productId2);
+
+        when(cartItemRepository.findByUserIdAndProductIdIn(userId, productIds)).thenReturn(Flux.just(cartItem));
+
+        StepVerifier.create(cartService.getCartQuantities(userId, productIds))
+                .expectNext(Map.of(productId, 3))
+                .verifyComplete();
+
+        verify(cartItemRepository, times(1)).findByUserIdAndProductIdIn(userId, productIds);
+        verify(cartItemRepository, never()).findByUserIdAndProductId(any(), any());
+    }
+
+    @Test
+    void getCartQuantities_UserIsNull_ReturnsEmptyMap() {
+        StepVerifier.create(cartService.getCartQuantities(null, List.of(productId)))
+                .expectNext(Map.of())
+                .verifyComplete();
+
+        verifyNoInteractions(cartItemRepository);
+    }
+
     @Test
     void deleteCartItem_ShouldCallRepositoryDeleteMethod() {
         // Arrange
@@ -489,6 +468,59 @@ class CartServiceTest  {
 
     }
 
+    @Test
+    void isAvailable_balanceCachedBetweenCalls() {
+        BigDecimal balanceAmount = new BigDecimal("100.00");
+        when(cartItemRepository.calculateTotalPriceByUserId(userId))
+                .thenReturn(Mono.just(new BigDecimal("50.00")), Mono.just(new BigDecimal("150.00")));
+
+        prepareManagerMockDependencies();
+
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .setResponseCode(200)
+                .setBody("{\"userId\":\"" + userId.toString() + "\", \"amount\": " + balanceAmount.toPlainString() + "}"));
+
+        StepVerifier.create(cartService.isAvailable(userId))
+                .expectNext(true)
+                .verifyComplete();
+        // Сумма корзины изменилась, баланс - из кеша
+        StepVerifier.create(cartService.isAvailable(userId))
+                .expectNext(false)
+                .verifyComplete();
+
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void isAvailable_withCartTotal_doesNotQueryCartTotal() {
+        BigDecimal balanceAmount = new BigDecimal("100.00");
+
+        prepareManagerMockDependencies();
+
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .setResponseCode(200)
+                .setBody("{\"userId\":\"" + userId.toString() + "\", \"amount\": " + balanceAmount.toPlainString() + "}"));
+
+        StepVerifier.create(cartService.isAvailable(userId, new BigDecimal("50.00")))
+                .expectNext(true)
+                .verifyComplete();
+
+        verifyNoInteractions(cartItemRepository);
+    }
+
+    @Test
+    void isAvailable_circuitOpen_unknownWithoutCallingPaymentService() {
+        when(cartItemRepository.calculateTotalPriceByUserId(userId)).thenReturn(Mono.just(BigDecimal.TEN));
+        circuitBreaker.transitionToOpenState();
+
+        StepVerifier.create(cartService.isAvailable(userId))
+                .verifyComplete();
+
+        assertEquals(0, mockWebServer.getRequestCount());
+    }
+
     private void prepareManagerMockDependencies() {
         String mockAccessTokenValue = "mock-jwt-token";
 
@@ -540,7 +572,7 @@ class CartServiceTest  {
     }
 
     @Test
-    void isAvailable_shouldReturnFalseWhenPaymentServiceReturnsError() throws InterruptedException {
+    void isAvailable_paymentServiceError_returnsUnknown() throws InterruptedException {
         UUID userId = UUID.randomUUID();
         BigDecimal cartTotalPrice = new BigDecimal("100.00");
         String mockAccessTokenValue = "mock-jwt-token";
@@ -560,9 +592,9 @@ class CartServiceTest  {
 
         Mono<Boolean> resultMono = cartService.isAvailable(userId);
 
+        // Доступность неизвестна
         StepVerifier.create(resultMono)
-                .expectError(RuntimeException.class)
-                .verify();
+                .verifyComplete();
 
         mockWebServer.takeRequest();
         verify(manager).authorize(any(OAuth2AuthorizeRequest.class));
@@ -570,7 +602,7 @@ class CartServiceTest  {
     }
 
     @Test
-    void isAvailable_returnsFalseWhenBalanceServiceReturnsError() {
+    void isAvailable_authorizationError_returnsUnknown() {
         UUID userId = UUID.randomUUID();
         BigDecimal cartTotalPrice = new BigDecimal("100.00");
 
@@ -584,8 +616,7 @@ class CartServiceTest  {
         Mono<Boolean> resultMono = cartService.isAvailable(userId);
 
         StepVerifier.create(resultMono)
-                .expectError(AuthenticationException.class) // Due to the flatMap chain and defaultIfEmpty(false)
-                .verify();
+                .verifyComplete(); // Доступность неизвестна
 
         verify(manager).authorize(any(OAuth2AuthorizeRequest.class));
         verify(cartItemRepository).calculateTotalPriceByUserId(userId);
@@ -0,0 +1,116 @@
+package io.github.tasoula.intershop.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+class CheckoutIdempotencyServiceTest {
+
+    @Container
+    private static final GenericContainer<?> redis = new GenericContainer<>("redis:7.4.2-bookworm").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private CheckoutIdempotencyService service;
+    private AtomicInteger checkouts;
+    private UUID userId;
+
+    @BeforeAll
+    static void beforeAll() {
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getFirstMappedPort());
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        connectionFactory.destroy();
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+        service = new CheckoutIdempotencyService(redisTemplate, Duration.ofMinutes(5), Duration.ofSeconds(2));
+        checkouts = new AtomicInteger();
+        userId = UUID.randomUUID();
+    }
+
+    private Mono<UUID> checkout(UUID orderId) {
+        return Mono.fromSupplier(() -> {
+            checkouts.incrementAndGet();
+            return orderId;
+        });
+    }
+
+    @Test
+    void once_repeatedKey_returnsSameOrderWithoutSecondCheckout() {
+        UUID orderId = UUID.randomUUID();
+
+        StepVerifier.create(service.once(userId, "key-1", () -> checkout(orderId))).expectNext(orderId).verifyComplete();
+        StepVerifier.create(service.once(userId, "key-1", () -> checkout(UUID.randomUUID()))).expectNext(orderId).verifyComplete();
+
+        assertThat(checkouts).hasValue(1);
+    }
+
+    @Test
+    void once_differentKeys_checkoutEachTime() {
+        service.once(userId, "key-1", () -> checkout(UUID.randomUUID())).block();
+        service.once(userId, "key-2", () -> checkout(UUID.randomUUID())).block();
+
+        assertThat(checkouts).hasValue(2);
+    }
+
+    @Test
+    void once_concurrentDuplicate_waitsForFirstRequest() {
+        UUID orderId = UUID.randomUUID();
+
+        // Повтор приходит, пока первый запрос ещё оформляет заказ
+        Mono<UUID> first = service.once(userId, "key-1", () -> Mono.delay(Duration.ofMillis(500)).thenReturn(orderId));
+        Mono<UUID> duplicate = Mono.delay(Duration.ofMillis(100))
+                .then(service.once(userId, "key-1", () -> checkout(UUID.randomUUID())));
+
+        StepVerifier.create(Mono.zip(first, duplicate))
+                .assertNext(results -> {
+                    assertThat(results.getT1()).isEqualTo(orderId);
+                    assertThat(results.getT2()).isEqualTo(orderId);
+                })
+                .verifyComplete();
+        assertThat(checkouts).hasValue(0);
+    }
+
+    @Test
+    void once_failedCheckout_releasesKey() {
+        UUID orderId = UUID.randomUUID();
+
+        StepVerifier.create(service.once(userId, "key-1", () -> Mono.error(new IllegalStateException("db down"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(service.once(userId, "key-1", () -> checkout(orderId))).expectNext(orderId).verifyComplete();
+    }
+
+    @Test
+    void once_withoutKey_noDeduplication() {
+        service.once(userId, null, () -> checkout(UUID.randomUUID())).block();
+        service.once(userId, "", () -> checkout(UUID.randomUUID())).block();
+
+        assertThat(checkouts).hasValue(2);
+    }
+}
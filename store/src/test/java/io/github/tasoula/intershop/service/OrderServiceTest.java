@@ -1,50 +1,53 @@
 package io.github.tasoula.intershop.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.tasoula.intershop.dao.CartItemRepository;
 import io.github.tasoula.intershop.dao.OrderItemRepository;
 import io.github.tasoula.intershop.dao.OrderRepository;
+import io.github.tasoula.intershop.dao.PaymentOutboxRepository;
+import io.github.tasoula.intershop.dto.OrderCursor;
 import io.github.tasoula.intershop.dto.OrderDto;
-import io.github.tasoula.intershop.exceptions.PaymentException;
+import io.github.tasoula.intershop.dto.OrderSnapshotRow;
+import io.github.tasoula.intershop.enums.OrderStatus;
+import io.github.tasoula.intershop.exceptions.OutOfStockException;
+import io.github.tasoula.intershop.exceptions.PaymentServiceUnavailableException;
 import io.github.tasoula.intershop.model.CartItem;
 import io.github.tasoula.intershop.model.Order;
 import io.github.tasoula.intershop.model.OrderItem;
+import io.github.tasoula.intershop.model.PaymentOutbox;
 import io.github.tasoula.intershop.model.Product;
-import okhttp3.mockwebserver.MockResponse;
-import okhttp3.mockwebserver.MockWebServer;
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
-import org.springframework.security.oauth2.client.registration.ClientRegistration;
-import org.springframework.security.oauth2.core.OAuth2AccessToken;
-import org.springframework.security.oauth2.core.OAuth2RefreshToken;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
-import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.util.Collections;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -58,11 +61,10 @@ class OrderServiceTest {
     @Mock
     private ProductDataService productDataService;
     @Mock
-    private ReactiveOAuth2AuthorizedClientManager manager;
+    private PaymentOutboxRepository paymentOutboxRepository;
     @InjectMocks
     private OrderService orderService;
-    private MockWebServer mockWebServer;
-    private WebClient webClient;
+    private CircuitBreaker circuitBreaker;
 
     private UUID userId;
     private UUID orderId;
@@ -78,7 +80,7 @@ class OrderServiceTest {
     private OrderDto orderDto;
 
     @BeforeEach
-    void setUp() throws IOException {
+    void setUp() {
         userId = UUID.randomUUID();
         orderId = UUID.randomUUID();
         productId1 = UUID.randomUUID();
@@ -124,109 +126,154 @@ class OrderServiceTest {
         orderDto = new OrderDto();
         orderDto.setId(orderId);
 
-        mockWebServer = new MockWebServer();
-        mockWebServer.start();
+        circuitBreaker = CircuitBreaker.ofDefaults("payment");
 
-        String baseUrl = mockWebServer.url("/").toString();
-        webClient = WebClient.builder().baseUrl(baseUrl).build();
         orderService = new OrderService(orderRepository,
                 orderItemRepository,
-                cartItemRepository,
+                new DatabaseCartStore(cartItemRepository),
                 productDataService,
-                webClient,
-                manager); // Re-inject dependencies
+                paymentOutboxRepository,
+                circuitBreaker,
+                new ObjectMapper()); // Re-inject dependencies
     }
 
-    @AfterEach
-    public void tearDown() throws IOException {
-        // Останавливаем MockWebServer после каждого теста
-        mockWebServer.shutdown();
+    private OrderSnapshotRow row(UUID orderId, String snapshot) {
+        return new OrderSnapshotRow(orderId, OrderStatus.PAID, LocalDateTime.of(2025, 1, 1, 12, 0), snapshot);
     }
 
-    @Test
-    void getById_OrderExists_ReturnsOrderDto() {
-        when(orderRepository.findById(orderId)).thenReturn(Mono.just(order));
-        when(orderItemRepository.findByOrderId(orderId)).thenReturn(Flux.fromIterable(List.of(orderItem1, orderItem2)));
-        when(productDataService.findById(orderItem1.getProductId())).thenReturn(Mono.just(product1));
-        when(productDataService.findById(orderItem2.getProductId())).thenReturn(Mono.just(product2));
-
-        Mono<OrderDto> result = orderService.getById(orderId);
+    private static final String SNAPSHOT = """
+            {"totalAmount": 35.00, "items": [
+              {"id": "%s", "title": "Phone", "quantity": 2, "price": 10.00},
+              {"id": "%s", "title": "Lamp", "quantity": 3, "price": 5.00}]}
+            """;
 
-        OrderDto o = result.block();
+    private String snapshot() {
+        return SNAPSHOT.formatted(productId1, productId2);
+    }
 
-        StepVerifier.create(result)
-                .expectNextMatches(dto -> dto.getId().equals(orderId))
+    @Test
+    void getById_OrderExists_ReturnsOrderFromSnapshot() {
+        when(orderRepository.findSnapshotById(orderId)).thenReturn(Mono.just(row(orderId, snapshot())));
+
+        StepVerifier.create(orderService.getById(orderId))
+                .assertNext(dto -> {
+                    assertEquals(orderId, dto.getId());
+                    assertEquals(2, dto.getItems().size());
+                    assertEquals(productId1, dto.getItems().get(0).getId());
+                    assertEquals("Phone", dto.getItems().get(0).getTitle());
+                    assertEquals(2, dto.getItems().get(0).getQuantity());
+                    assertEquals(0, BigDecimal.TEN.compareTo(dto.getItems().get(0).getPrice()));
+                    assertEquals(0, BigDecimal.valueOf(35).compareTo(dto.getTotalAmount()));
+                    assertEquals(OrderStatus.PAID, dto.getStatus());
+                })
                 .verifyComplete();
 
-        verify(orderRepository).findById(orderId);
+        // Ни позиции, ни товары не читаются
+        verifyNoInteractions(productDataService, orderItemRepository);
     }
 
     @Test
     void getById_OrderDoesNotExist_ReturnsEmptyMono() {
-        when(orderRepository.findById(orderId)).thenReturn(Mono.empty());
-
-        Mono<OrderDto> result = orderService.getById(orderId);
+        when(orderRepository.findSnapshotById(orderId)).thenReturn(Mono.empty());
 
-        StepVerifier.create(result)
-                .expectComplete();
+        StepVerifier.create(orderService.getById(orderId))
+                .verifyComplete();
 
-        verify(orderRepository).findById(orderId);
+        verify(orderRepository).findSnapshotById(orderId);
     }
 
     @Test
-    void getByUserId_OrdersExist_ReturnsFluxOfOrderDtos() {
-        when(orderRepository.findByUserId(userId)).thenReturn(Flux.just(order));
-        when(orderItemRepository.findByOrderId(orderId)).thenReturn(Flux.fromIterable(List.of(orderItem1, orderItem2)));
-        when(productDataService.findById(orderItem1.getProductId())).thenReturn(Mono.just(product1));
-        when(productDataService.findById(orderItem2.getProductId())).thenReturn(Mono.just(product2));
-
-        Flux<OrderDto> result = orderService.getByUserId(userId);
-
-        StepVerifier.create(result)
-                .expectNextMatches(dto -> dto.getId().equals(orderId))
+    void getByUserId_firstPage_readsSnapshots() {
+        UUID otherOrderId = UUID.randomUUID();
+        when(orderRepository.findSnapshotsByUserId(userId, 3))
+                .thenReturn(Flux.just(row(orderId, snapshot()), row(otherOrderId, snapshot())));
+
+        StepVerifier.create(orderService.getByUserId(userId, null, null, 2))
+                .assertNext(page -> {
+                    List<OrderDto> orders = page.getSlice().getContent();
+                    assertEquals(List.of(orderId, otherOrderId), orders.stream().map(OrderDto::getId).toList());
+                    assertEquals(2, orders.get(0).getItems().size());
+                    assertFalse(page.getSlice().hasNext());
+                    assertNull(page.getNextCursor());
+                })
                 .verifyComplete();
 
-        verify(orderRepository).findByUserId(userId);
+        verifyNoInteractions(productDataService, orderItemRepository);
     }
 
     @Test
-    void getByUserId_NoOrdersExist_ReturnsEmptyFlux() {
-        when(orderRepository.findByUserId(userId)).thenReturn(Flux.empty());
-
-        Flux<OrderDto> result = orderService.getByUserId(userId);
-
-        StepVerifier.create(result)
-                .expectComplete();
-
-        verify(orderRepository).findByUserId(userId);
+    void getByUserId_moreOrdersThanPage_returnsCursorToLastShownOrder() {
+        UUID secondOrderId = UUID.randomUUID();
+        UUID thirdOrderId = UUID.randomUUID();
+        OrderCursor after = new OrderCursor(1, LocalDateTime.of(2025, 2, 1, 0, 0), UUID.randomUUID());
+        when(orderRepository.findSnapshotsByUserIdBefore(userId, after.getCreatedAt(), after.getId(), 3)).thenReturn(Flux.just(
+                row(orderId, snapshot()),
+                row(secondOrderId, snapshot()),
+                row(thirdOrderId, snapshot())));
+
+        StepVerifier.create(orderService.getByUserId(userId, after, null, 2))
+                .assertNext(page -> {
+                    assertEquals(List.of(orderId, secondOrderId),
+                            page.getSlice().getContent().stream().map(OrderDto::getId).toList());
+                    assertEquals(1, page.getSlice().getNumber());
+                    assertTrue(page.getSlice().hasNext());
+                    OrderCursor next = OrderCursor.decode(page.getNextCursor());
+                    assertEquals(2, next.getPage());
+                    assertEquals(secondOrderId, next.getId());
+                })
+                .verifyComplete();
     }
 
     @Test
-    void createOrder_CartIsEmpty_ReturnsEmptyMono() {
-        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.empty());
-
-        Mono<UUID> result = orderService.createOrder(userId);
-
-        StepVerifier.create(result)
-                .expectComplete();
+    void getByUserId_beforeCursor_returnsNewerOrdersNewestFirst() {
+        UUID newerOrderId = UUID.randomUUID();
+        UUID newestOrderId = UUID.randomUUID();
+        UUID beyondPageOrderId = UUID.randomUUID();
+        OrderCursor before = new OrderCursor(1, LocalDateTime.of(2025, 2, 1, 0, 0), UUID.randomUUID());
+        when(orderRepository.findSnapshotsByUserIdAfter(userId, before.getCreatedAt(), before.getId(), 3)).thenReturn(Flux.just(
+                row(newerOrderId, snapshot()),
+                row(newestOrderId, snapshot()),
+                row(beyondPageOrderId, snapshot())));
+
+        StepVerifier.create(orderService.getByUserId(userId, null, before, 2))
+                .assertNext(page -> {
+                    assertEquals(List.of(newestOrderId, newerOrderId),
+                            page.getSlice().getContent().stream().map(OrderDto::getId).toList());
+                    assertEquals(1, page.getSlice().getNumber());
+                    assertEquals(newestOrderId, OrderCursor.decode(page.getPreviousCursor()).getId());
+                    assertEquals(0, OrderCursor.decode(page.getPreviousCursor()).getPage());
+                    assertEquals(newerOrderId, OrderCursor.decode(page.getNextCursor()).getId());
+                })
+                .verifyComplete();
+    }
 
-        verify(cartItemRepository).findByUserId(userId);
+    @Test
+    void getByUserId_beforeCursorReachesNewestOrder_returnsFirstPage() {
+        OrderCursor before = new OrderCursor(3, LocalDateTime.of(2025, 2, 1, 0, 0), UUID.randomUUID());
+        when(orderRepository.findSnapshotsByUserIdAfter(userId, before.getCreatedAt(), before.getId(), 3))
+                .thenReturn(Flux.just(row(orderId, snapshot())));
+
+        StepVerifier.create(orderService.getByUserId(userId, null, before, 2))
+                .assertNext(page -> {
+                    assertEquals(0, page.getSlice().getNumber());
+                    assertNull(page.getPreviousCursor());
+                    assertNotNull(page.getNextCursor());
+                })
+                .verifyComplete();
     }
 
     @Test
-    void createOrder_NotInStock_ReturnsEmptyMono() {
-        UUID productOutOfStockId = UUID.randomUUID();
-        Product productOutOfStock = new Product();
-        productOutOfStock.setId(productOutOfStockId);
-        productOutOfStock.setPrice(BigDecimal.TEN);
-        productOutOfStock.setStockQuantity(10);
+    void getByUserId_NoOrdersExist_ReturnsEmptyPage() {
+        when(orderRepository.findSnapshotsByUserId(userId, 11)).thenReturn(Flux.empty());
 
-        CartItem cartItemOutOfStock = new CartItem();
-        cartItemOutOfStock.setUserId(userId);
-        cartItemOutOfStock.setProductId(productOutOfStock.getId());
-        cartItemOutOfStock.setQuantity(3);
+        StepVerifier.create(orderService.getByUserId(userId, null, null, 10))
+                .assertNext(page -> assertTrue(page.getSlice().getContent().isEmpty()))
+                .verifyComplete();
+    }
 
-        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.just(cartItemOutOfStock));
+    @Test
+    void createOrder_CartIsEmpty_ReturnsEmptyMono() {
+        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.empty());
 
         Mono<UUID> result = orderService.createOrder(userId);
 
@@ -237,30 +284,17 @@ class OrderServiceTest {
     }
 
     @Test
-    void createOrder_notEnoughStock() {
-        // Arrange
-        UUID productId = UUID.randomUUID();
-
-        CartItem cartItem = new CartItem();
-        cartItem.setProductId(productId);
-        cartItem.setUserId(userId);
-        cartItem.setQuantity(10);
-        List<CartItem> cartItems = List.of(cartItem);
-
-        Product product = new Product();
-        product.setId(productId);
-        product.setStockQuantity(5); // Not enough stock
-
-        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.fromIterable(cartItems));
-        when(productDataService.findById(productId)).thenReturn(Mono.just(product));
-
-        // Act
-        Mono<UUID> result = orderService.createOrder(userId);
+    void createOrder_notEnoughStock_abortsOrder() {
+        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.fromIterable(List.of(cartItem1, cartItem2)));
+        // Условный UPDATE не нашёл нужного количества хотя бы для одной позиции - запрос ничего не вернул
+        when(orderRepository.checkout(any(UUID.class), eq(userId))).thenReturn(Flux.empty());
 
-        // Assert
-        StepVerifier.create(result)
-                .expectComplete() // Should complete without emitting anything because of empty Mono
+        StepVerifier.create(orderService.createOrder(userId))
+                .expectError(OutOfStockException.class)
                 .verify();
+
+        verify(cartItemRepository, never()).deleteByUserId(userId);
+        verifyNoInteractions(productDataService);
     }
 
     @Test
@@ -278,117 +312,116 @@ class OrderServiceTest {
     }
 
     private void prepareMockDependencies(){
-        String mockAccessTokenValue = "mock-jwt-token";
-
-        // 1. Mock Keycloak/OAuth2 Authorization Manager
-        // Create a mock OAuth2AccessToken
-        OAuth2AccessToken mockAccessToken = new OAuth2AccessToken(
-                OAuth2AccessToken.TokenType.BEARER,
-                mockAccessTokenValue,
-                Instant.now(),
-                Instant.now().plusSeconds(3600),
-                Collections.singleton("scope")
-        );
-
-        // Create a mock OAuth2AuthorizedClient
-        OAuth2AuthorizedClient mockAuthorizedClient = new OAuth2AuthorizedClient(
-                Mockito.mock(ClientRegistration.class), // Mock ClientRegistration
-                "test-principal", // Principal name
-                mockAccessToken,
-                Mockito.mock(OAuth2RefreshToken.class) // Mock Refresh Token
-        );
-
-        // Configure manager.authorize() to return our mock client
-        when(manager.authorize(any(OAuth2AuthorizeRequest.class)))
-                .thenReturn(Mono.just(mockAuthorizedClient));
-
         when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.fromIterable(List.of(cartItem1, cartItem2)));
-        when(productDataService.findById(productId1)).thenReturn(Mono.just(product1));
-        when(productDataService.findById(productId2)).thenReturn(Mono.just(product2));
-        when(orderRepository.save(any(Order.class))).thenReturn(Mono.just(order));
-        when(productDataService.update(any(Product.class))).thenReturn(Mono.empty());
-        when(orderItemRepository.save(any(OrderItem.class))).thenReturn(Mono.just(new OrderItem()));
+        when(orderRepository.checkout(any(UUID.class), eq(userId))).thenReturn(Flux.just(product1, product2));
+        // Кеш обновляется только после фиксации - при неудачной фиксации вызовов нет
+        lenient().when(productDataService.stockReserved(product1, 2)).thenReturn(Mono.just(product1));
+        lenient().when(productDataService.stockReserved(product2, 3)).thenReturn(Mono.just(product2));
         when(cartItemRepository.deleteByUserId(userId)).thenReturn(Mono.empty());
     }
 
     @Test
-    void createOrder_success() {
+    void createOrder_success_placesOrderWithSingleStatement() {
         prepareMockDependencies();
 
-        mockWebServer.enqueue(new MockResponse()
-                .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .setResponseCode(200));
-
         // Act
-        Mono<UUID> result = orderService.createOrder(userId);
+        UUID placed = orderService.createOrder(userId).block();
 
         // Assert
-        StepVerifier.create(result)
-                .expectNext(orderId)
-                .verifyComplete();
+        ArgumentCaptor<UUID> id = ArgumentCaptor.forClass(UUID.class);
+        verify(orderRepository).checkout(id.capture(), eq(userId));
+        assertEquals(id.getValue(), placed);
+        // Кеш товаров обновлён строками, которые вернул запрос
+        verify(productDataService).stockReserved(product1, 2);
+        verify(productDataService).stockReserved(product2, 3);
+        verify(cartItemRepository).deleteByUserId(userId);
+        // Платёж ставится в очередь тем же запросом, сервис платежей не вызывается
+        verifyNoInteractions(paymentOutboxRepository, orderItemRepository);
     }
 
     @Test
-    void createOrder_paymentFailed() {
+    void createOrder_commitFails_doesNotRefreshProductCache() {
         prepareMockDependencies();
+        TransactionalOperator transaction = TransactionalOperator.create(new StubTransactionManager(true));
 
-        mockWebServer.enqueue(new MockResponse()
-                .setResponseCode(HttpStatus.PAYMENT_REQUIRED.value())); // Payment Required
-
-        // Act
-        Mono<UUID> result = orderService.createOrder(userId);
-
-        // Assert
-        StepVerifier.create(result)
-                .expectError(PaymentException.class)
+        StepVerifier.create(transaction.transactional(orderService.createOrder(userId)))
+                .expectError()
                 .verify();
+
+        // Остатки не зафиксированы - кеш товаров не трогаем
+        verify(productDataService, never()).stockReserved(any(Product.class), anyInt());
     }
 
     @Test
-    void createOrder_accountNotFount() {
+    void createOrder_refreshesProductCacheAfterCommit() {
         prepareMockDependencies();
+        StubTransactionManager transactionManager = new StubTransactionManager(false);
+        TransactionalOperator transaction = TransactionalOperator.create(transactionManager);
+        when(productDataService.stockReserved(product1, 2)).thenAnswer(invocation -> {
+            assertTrue(transactionManager.committed, "cache refreshed before commit");
+            return Mono.just(product1);
+        });
+
+        StepVerifier.create(transaction.transactional(orderService.createOrder(userId)))
+                .expectNextCount(1)
+                .verifyComplete();
 
-        mockWebServer.enqueue(new MockResponse()
-                .setResponseCode(HttpStatus.NOT_FOUND.value())); // Payment Required
+        verify(productDataService).stockReserved(product1, 2);
+        verify(productDataService).stockReserved(product2, 3);
+    }
 
-        // Act
-        Mono<UUID> result = orderService.createOrder(userId);
+    // Менеджер транзакций без БД: фиксация либо проходит, либо падает
+    @Test
+    void createOrder_circuitOpen_failsFastWithoutTouchingCart() {
+        circuitBreaker.transitionToOpenState();
 
-        // Assert
-        StepVerifier.create(result)
-                .expectError(NoSuchElementException.class)
+        StepVerifier.create(orderService.createOrder(userId))
+                .expectError(PaymentServiceUnavailableException.class)
                 .verify();
+
+        verifyNoInteractions(cartItemRepository, orderRepository, paymentOutboxRepository);
     }
 
     @Test
-    void createOrder_badRequest() {
-        prepareMockDependencies();
+    void completePayment_marksOrderPaid() {
+        PaymentOutbox payment = new PaymentOutbox(orderId, userId, BigDecimal.valueOf(35));
+        payment.setId(UUID.randomUUID());
+        when(paymentOutboxRepository.markDone(payment.getId())).thenReturn(Mono.just(1));
+        when(orderRepository.updateStatus(orderId, OrderStatus.PENDING_PAYMENT, OrderStatus.PAID)).thenReturn(Mono.just(1));
 
-        mockWebServer.enqueue(new MockResponse()
-                .setResponseCode(HttpStatus.BAD_REQUEST.value())); // Payment Required
-
-        // Act
-        Mono<UUID> result = orderService.createOrder(userId);
+        StepVerifier.create(orderService.completePayment(payment))
+                .verifyComplete();
 
-        // Assert
-        StepVerifier.create(result)
-                .expectError(RuntimeException.class)
-                .verify();
+        verify(orderRepository).updateStatus(orderId, OrderStatus.PENDING_PAYMENT, OrderStatus.PAID);
     }
 
     @Test
-    void createOrder_paymentServerError() {
-        prepareMockDependencies();
+    void cancelUnpaidOrder_cancelsOrderAndRestocks() {
+        PaymentOutbox payment = new PaymentOutbox(orderId, userId, BigDecimal.valueOf(35));
+        payment.setId(UUID.randomUUID());
+        when(paymentOutboxRepository.markFailed(payment.getId(), "no money")).thenReturn(Mono.just(1));
+        when(orderRepository.updateStatus(orderId, OrderStatus.PENDING_PAYMENT, OrderStatus.CANCELLED)).thenReturn(Mono.just(1));
+        when(orderItemRepository.findByOrderId(orderId)).thenReturn(Flux.just(orderItem1, orderItem2));
+        when(productDataService.restock(productId1, 2)).thenReturn(Mono.just(product1));
+        when(productDataService.restock(productId2, 3)).thenReturn(Mono.just(product2));
+
+        StepVerifier.create(orderService.cancelUnpaidOrder(payment, "no money"))
+                .verifyComplete();
 
-        mockWebServer.enqueue(new MockResponse()
-                .setResponseCode(HttpStatus.INTERNAL_SERVER_ERROR.value())); // Payment Required
+        verify(productDataService).restock(productId1, 2);
+        verify(productDataService).restock(productId2, 3);
+    }
 
-        // Act
-        Mono<UUID> result = orderService.createOrder(userId);
+    @Test
+    void cancelUnpaidOrder_alreadyCancelled_doesNotRestockTwice() {
+        PaymentOutbox payment = new PaymentOutbox(orderId, userId, BigDecimal.valueOf(35));
+        payment.setId(UUID.randomUUID());
+        when(paymentOutboxRepository.markFailed(payment.getId(), "no money")).thenReturn(Mono.just(1));
+        when(orderRepository.updateStatus(orderId, OrderStatus.PENDING_PAYMENT, OrderStatus.CANCELLED)).thenReturn(Mono.just(0));
 
-        // Assert
-        StepVerifier.create(result)
-                .expectError(RuntimeException.class)
-                .verify();
+        StepVerifier.create(orderService.cancelUnpaidOrder(payment, "no money"))
+                .verifyComplete();
+
+        verify(productDataService, never()).restock(any(UUID.class), anyInt());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.tasoula.intershop.cache.BalanceCache;
+import io.github.tasoula.intershop.config.ClientCredentialsTokenFilter;
+import io.github.tasoula.intershop.exceptions.PaymentException;
+import io.github.tasoula.intershop.exceptions.PaymentServiceUnavailableException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentClientTest {
+    @Mock
+    private ReactiveOAuth2AuthorizedClientManager manager;
+    @Mock
+    private BalanceCache balanceCache;
+    private MockWebServer mockWebServer;
+    private CircuitBreaker circuitBreaker;
+    private PaymentClient paymentClient;
+    private UUID userId;
+    private static final String KEY = "order-1";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        userId = UUID.randomUUID();
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        circuitBreaker = CircuitBreaker.ofDefaults("payment");
+
+        WebClient webClient = WebClient.builder()
+                .baseUrl(mockWebServer.url("/").toString())
+                .filter(new ClientCredentialsTokenFilter(manager, Mockito.mock(ReactiveOAuth2AuthorizedClientService.class), "store", Duration.ofSeconds(60), Clock.systemUTC()))
+                .build();
+        paymentClient = new PaymentClient(webClient, balanceCache, circuitBreaker, Bulkhead.ofDefaults("payment"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    private void authorize() {
+        OAuth2AccessToken token = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "mock-jwt-token",
+                Instant.now(), Instant.now().plusSeconds(3600), Collections.singleton("scope"));
+        when(manager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(Mono.just(new OAuth2AuthorizedClient(Mockito.mock(ClientRegistration.class), "test-principal", token)));
+    }
+
+    @Test
+    void pay_success_evictsBalance() throws InterruptedException {
+        authorize();
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .setResponseCode(200));
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.valueOf(35), KEY))
+                .verifyComplete();
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertEquals("/payment/" + userId, request.getPath());
+        assertEquals("Bearer mock-jwt-token", request.getHeader(HttpHeaders.AUTHORIZATION));
+        assertEquals(KEY, request.getHeader("Idempotency-Key"));
+        verify(balanceCache).evict(userId); // Баланс изменился
+    }
+
+    @Test
+    void pay_paymentFailed() {
+        authorize();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.PAYMENT_REQUIRED.value()));
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.TEN, KEY))
+                .expectError(PaymentException.class)
+                .verify();
+
+        verify(balanceCache).evict(userId); // Закешированный баланс оказался неверным
+    }
+
+    @Test
+    void pay_accountNotFound() {
+        authorize();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.NOT_FOUND.value()));
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.TEN, KEY))
+                .expectError(NoSuchElementException.class)
+                .verify();
+    }
+
+    @Test
+    void pay_badRequest_permanent() {
+        authorize();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.BAD_REQUEST.value()));
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.TEN, KEY))
+                .expectErrorMatches(e -> e instanceof PaymentException && PaymentClient.isPermanent(e))
+                .verify();
+    }
+
+    @Test
+    void pay_idempotencyKeyReused_permanent() {
+        authorize();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.UNPROCESSABLE_ENTITY.value()));
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.TEN, KEY))
+                .expectErrorMatches(e -> e instanceof PaymentException && PaymentClient.isPermanent(e))
+                .verify();
+    }
+
+    @Test
+    void pay_serverError() {
+        authorize();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpStatus.INTERNAL_SERVER_ERROR.value()));
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.TEN, KEY))
+                .expectErrorMatches(e -> !PaymentClient.isPermanent(e))
+                .verify();
+        verify(balanceCache, never()).evict(userId);
+    }
+
+    @Test
+    void pay_serviceUnreachable_unavailable() {
+        authorize();
+        mockWebServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.TEN, KEY))
+                .expectError(PaymentServiceUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    void pay_circuitOpen_doesNotCallService() {
+        circuitBreaker.transitionToOpenState();
+
+        StepVerifier.create(paymentClient.pay(userId, BigDecimal.TEN, KEY))
+                .expectError(PaymentServiceUnavailableException.class)
+                .verify();
+
+        assertEquals(0, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void isPermanent_onlyDeclinedPayments() {
+        assertTrue(PaymentClient.isPermanent(new PaymentException("no money")));
+        assertTrue(PaymentClient.isPermanent(new NoSuchElementException("no account")));
+        assertFalse(PaymentClient.isPermanent(new RuntimeException("500")));
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.PaymentOutboxRepository;
+import io.github.tasoula.intershop.exceptions.PaymentException;
+import io.github.tasoula.intershop.exceptions.PaymentServiceUnavailableException;
+import io.github.tasoula.intershop.model.PaymentOutbox;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentDispatcherTest {
+    @Mock
+    private PaymentOutboxRepository paymentOutboxRepository;
+    @Mock
+    private PaymentClient paymentClient;
+    @Mock
+    private OrderService orderService;
+    private PaymentDispatcher dispatcher;
+    private PaymentOutbox payment;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new PaymentDispatcher(paymentOutboxRepository, paymentClient, orderService,
+                20, 3, Duration.ofSeconds(5), Duration.ofSeconds(60), Duration.ofMinutes(1));
+        payment = new PaymentOutbox(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.valueOf(35));
+        payment.setId(UUID.randomUUID());
+    }
+
+    @Test
+    void dispatch_paymentSucceeded_completesOrder() {
+        when(paymentOutboxRepository.claimBatch(20, 60)).thenReturn(Flux.just(payment));
+        when(paymentClient.pay(payment.getUserId(), payment.getAmount(), payment.getOrderId().toString())).thenReturn(Mono.empty());
+        when(orderService.completePayment(payment)).thenReturn(Mono.empty());
+
+        StepVerifier.create(dispatcher.dispatch()).verifyComplete();
+
+        verify(orderService).completePayment(payment);
+        verify(orderService, never()).cancelUnpaidOrder(any(), anyString());
+    }
+
+    @Test
+    void dispatch_paymentDeclined_cancelsOrder() {
+        when(paymentOutboxRepository.claimBatch(20, 60)).thenReturn(Flux.just(payment));
+        when(paymentClient.pay(payment.getUserId(), payment.getAmount(), payment.getOrderId().toString()))
+                .thenReturn(Mono.error(new PaymentException("Оплата не прошла (недостаточно средств)")));
+        when(orderService.cancelUnpaidOrder(payment, "Оплата не прошла (недостаточно средств)")).thenReturn(Mono.empty());
+
+        StepVerifier.create(dispatcher.dispatch()).verifyComplete();
+
+        verify(orderService).cancelUnpaidOrder(payment, "Оплата не прошла (недостаточно средств)");
+        verify(paymentOutboxRepository, never()).scheduleRetry(any(), anyLong(), anyString());
+    }
+
+    @Test
+    void dispatch_serviceUnavailable_schedulesRetry() {
+        payment.setAttempts(1);
+        when(paymentOutboxRepository.claimBatch(20, 60)).thenReturn(Flux.just(payment));
+        when(paymentClient.pay(payment.getUserId(), payment.getAmount(), payment.getOrderId().toString()))
+                .thenReturn(Mono.error(new PaymentServiceUnavailableException("down", null)));
+        when(paymentOutboxRepository.scheduleRetry(payment.getId(), 10, "down")).thenReturn(Mono.just(1));
+
+        StepVerifier.create(dispatcher.dispatch()).verifyComplete();
+
+        verify(paymentOutboxRepository).scheduleRetry(payment.getId(), 10, "down"); // вторая попытка - 2 * 5 сек.
+        verify(orderService, never()).cancelUnpaidOrder(any(), anyString());
+    }
+
+    @Test
+    void dispatch_attemptsExhausted_parksPaymentForReview() {
+        payment.setAttempts(2);
+        when(paymentOutboxRepository.claimBatch(20, 60)).thenReturn(Flux.just(payment));
+        when(paymentClient.pay(payment.getUserId(), payment.getAmount(), payment.getOrderId().toString()))
+                .thenReturn(Mono.error(new RuntimeException("500")));
+        when(paymentOutboxRepository.markForReview(payment.getId(), "500")).thenReturn(Mono.just(1));
+
+        StepVerifier.create(dispatcher.dispatch()).verifyComplete();
+
+        // 500 мог прийти уже после списания - заказ не отменяется и товар не возвращается
+        verify(paymentOutboxRepository).markForReview(payment.getId(), "500");
+        verify(orderService, never()).cancelUnpaidOrder(any(), anyString());
+        verify(paymentOutboxRepository, never()).scheduleRetry(any(), anyLong(), anyString());
+    }
+
+    @Test
+    void dispatch_declinedOnLastAttempt_cancelsOrder() {
+        payment.setAttempts(2);
+        when(paymentOutboxRepository.claimBatch(20, 60)).thenReturn(Flux.just(payment));
+        when(paymentClient.pay(payment.getUserId(), payment.getAmount(), payment.getOrderId().toString()))
+                .thenReturn(Mono.error(new PaymentException("Оплата не прошла (недостаточно средств)")));
+        when(orderService.cancelUnpaidOrder(payment, "Оплата не прошла (недостаточно средств)")).thenReturn(Mono.empty());
+
+        StepVerifier.create(dispatcher.dispatch()).verifyComplete();
+
+        verify(orderService).cancelUnpaidOrder(payment, "Оплата не прошла (недостаточно средств)");
+        verify(paymentOutboxRepository, never()).markForReview(any(), anyString());
+    }
+
+    @Test
+    void dispatch_recordingFails_leavesPaymentForNextLease() {
+        when(paymentOutboxRepository.claimBatch(20, 60)).thenReturn(Flux.just(payment));
+        when(paymentClient.pay(payment.getUserId(), payment.getAmount(), payment.getOrderId().toString())).thenReturn(Mono.empty());
+        when(orderService.completePayment(payment)).thenReturn(Mono.error(new IllegalStateException("db down")));
+
+        StepVerifier.create(dispatcher.dispatch()).verifyComplete();
+
+        verify(paymentOutboxRepository, never()).scheduleRetry(eq(payment.getId()), anyLong(), anyString());
+    }
+
+    @Test
+    void retryDelay_growsExponentiallyUpToLimit() {
+        assertEquals(Duration.ofSeconds(5), dispatcher.retryDelay(1));
+        assertEquals(Duration.ofSeconds(20), dispatcher.retryDelay(3));
+        assertEquals(Duration.ofSeconds(60), dispatcher.retryDelay(10));
+    }
+}
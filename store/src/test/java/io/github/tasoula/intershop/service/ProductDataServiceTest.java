@@ -1,5 +1,6 @@
 package io.github.tasoula.intershop.service;
 
+import io.github.tasoula.intershop.cache.ProductPageCache;
 import io.github.tasoula.intershop.dao.ProductRepository;
 import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
 import io.github.tasoula.intershop.model.Product;
@@ -9,6 +10,7 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.codec.multipart.FilePart;
@@ -22,11 +24,15 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest
@@ -39,6 +45,8 @@ public class ProductDataServiceTest {
     private ProductRepository productRepository;
     @MockitoSpyBean
     private ImageService imageService;
+    @MockitoSpyBean
+    private ProductSearchService productSearchService;
     @Autowired
     private ProductDataService productDataService;
     @Autowired
@@ -69,12 +77,14 @@ public class ProductDataServiceTest {
         // Clear cache before each test
         clearCache("products_all");
         clearCache("products");
+        clearCache("products_count");
     }
 
     @AfterEach
     void tearDown() throws Exception {
         clearCache("products_all");
         clearCache("products");
+        clearCache("products_count");
     }
 
     private void clearCache(String cacheName) {
@@ -89,9 +99,7 @@ public class ProductDataServiceTest {
         Pageable pageable = Pageable.ofSize(10).withPage(0);
         List<Product> expectedProducts = List.of(new Product(), new Product());
 
-        when(productRepository.findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(
-                searchTerm.toLowerCase(), searchTerm.toLowerCase(), 0, pageable))
-                .thenReturn(Flux.fromIterable(expectedProducts));
+        doReturn(Flux.fromIterable(expectedProducts)).when(productSearchService).search(searchTerm, pageable);
 
         Mono<List<Product>> result = productDataService.findAll(searchTerm, pageable);
 
@@ -99,8 +107,7 @@ public class ProductDataServiceTest {
                 .expectNext(expectedProducts)
                 .verifyComplete();
 
-        verify(productRepository).findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(
-                searchTerm.toLowerCase(), searchTerm.toLowerCase(), 0, pageable);
+        verify(productSearchService).search(searchTerm, pageable);
     }
 
     @Test
@@ -126,19 +133,16 @@ public class ProductDataServiceTest {
         Pageable pageable = Pageable.ofSize(10).withPage(0);
         List<Product> expectedProducts = List.of(new Product(), new Product());
 
-        when(productRepository.findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(
-                searchTerm.toLowerCase(), searchTerm.toLowerCase(), 0, pageable))
-                .thenReturn(Flux.fromIterable(expectedProducts));
+        doReturn(Flux.fromIterable(expectedProducts)).when(productSearchService).search(searchTerm, pageable);
 
         // First call - should hit repository and populate cache
         productDataService.findAll(searchTerm, pageable).block();
 
-        // Verify that the repository was called
-        verify(productRepository).findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(
-                searchTerm.toLowerCase(), searchTerm.toLowerCase(), 0, pageable);
+        // Verify that the search service was called
+        verify(productSearchService).search(searchTerm, pageable);
 
         // Clear the mock's invocations
-        reset(productRepository);
+        reset(productSearchService);
 
         // Second call - should retrieve from cache and not hit repository
         Mono<List<Product>> cachedResult = productDataService.findAll(searchTerm, pageable);
@@ -147,9 +151,8 @@ public class ProductDataServiceTest {
                 .expectNext(expectedProducts)
                 .verifyComplete();
 
-        // Verify that the repository wasn't called the second time
-        verify(productRepository, never()).findByTitleContainingOrDescriptionContainingIgnoreCaseAndStockQuantityGreaterThan(
-                searchTerm.toLowerCase(), searchTerm.toLowerCase(), 0, pageable);
+        // Verify that the search service wasn't called the second time
+        verify(productSearchService, never()).search(searchTerm, pageable);
     }
 
     @Test
@@ -225,55 +228,119 @@ public class ProductDataServiceTest {
 
         // Get the cache and assert that it's empty after the evict call.  This validates the CacheEvict annotation.
         assertNull(cacheManager.getCache("products_all").get("test-0-10")); // Assuming cache key structure.  This is fragile.
+        assertNull(cacheManager.getCache("products_count").get("test"));
     }
 
     @Test
-    void updateProduct_updatesCache() {
+    void stockReserved_cachesRowReturnedByDatabase() {
         UUID productId = UUID.randomUUID();
-        Product product = new Product();
-        product.setId(productId);
+        Product reserved = new Product(productId, "Phone", "", "", BigDecimal.TEN, 3);
 
-        when(productRepository.existsById(productId)).thenReturn(Mono.just(true));
-        when(productRepository.save(product)).thenReturn(Mono.just(product));
-
-        productDataService.update(product).block();
+        StepVerifier.create(productDataService.stockReserved(reserved, 2))
+                .expectNext(reserved)
+                .verifyComplete();
 
-        verify(productRepository).existsById(productId);
-        verify(productRepository).save(product);
+        Cache.ValueWrapper cached = cacheManager.getCache("products").get(productId);
+        assertNotNull(cached);
+        assertEquals(3, ((Product) cached.get()).getStockQuantity());
+        verify(productRepository, never()).save(any(Product.class));
+    }
 
-        // Get the cache and assert that it's updated.
-        // You might need to retrieve the cache entry and assert its value if you're testing the update logic.
-        assertNotNull(cacheManager.getCache("products").get(productId));
+    @Test
+    void stockReserved_stillInStock_evictsOnlyPagesWithProduct() {
+        Product phone = new Product(UUID.randomUUID(), "Phone", "", "", BigDecimal.TEN, 5);
+        Product lamp = new Product(UUID.randomUUID(), "Lamp", "", "", BigDecimal.ONE, 5);
+        Pageable firstPage = Pageable.ofSize(1).withPage(0);
+        Pageable secondPage = Pageable.ofSize(1).withPage(1);
+        when(productRepository.findByStockQuantityGreaterThan(0, firstPage)).thenReturn(Flux.just(phone));
+        when(productRepository.findByStockQuantityGreaterThan(0, secondPage)).thenReturn(Flux.just(lamp));
+        productDataService.findAll("", firstPage).block();
+        productDataService.findAll("", secondPage).block();
+
+        productDataService.stockReserved(new Product(phone.getId(), "Phone", "", "", BigDecimal.TEN, 4), 1).block();
+
+        Cache pages = cacheManager.getCache("products_all");
+        assertNull(pages.get(ProductPageCache.key("", firstPage)));
+        assertNotNull(pages.get(ProductPageCache.key("", secondPage)));
     }
 
     @Test
-    void updateProduct_productNotFound_throwsException(){
+    void restock_productBackInStock_evictsCounts() {
         UUID productId = UUID.randomUUID();
-        Product product = new Product();
-        product.setId(productId);
+        when(productRepository.countByStockQuantityGreaterThan(0)).thenReturn(Mono.just(5L));
+        doReturn(Mono.just(1L)).when(productSearchService).count("phone");
+        productDataService.count(null).block();
+        productDataService.count("phone").block();
 
-        when(productRepository.existsById(productId)).thenReturn(Mono.just(false));
+        // Остаток был 0 - товар возвращается в каталог
+        when(productRepository.addStock(productId, 2))
+                .thenReturn(Mono.just(new Product(productId, "Phone", "", "", BigDecimal.TEN, 2)));
 
-        StepVerifier.create(productDataService.update(product))
-                .expectError(ResourceNotFoundException.class)
-                .verify();
+        productDataService.restock(productId, 2).block();
+
+        Cache counts = cacheManager.getCache("products_count");
+        assertNull(counts.get(""));
+        assertNull(counts.get("phone"));
+    }
+
+    @Test
+    void stockReserved_stillInStock_keepsCounts() {
+        when(productRepository.countByStockQuantityGreaterThan(0)).thenReturn(Mono.just(5L));
+        productDataService.count(null).block();
+
+        productDataService.stockReserved(new Product(UUID.randomUUID(), "Phone", "", "", BigDecimal.TEN, 3), 2).block();
 
-        verify(productRepository).existsById(productId);
-        verify(productRepository, never()).save(product);
+        assertNotNull(cacheManager.getCache("products_count").get(""));
+    }
+
+    @Test
+    void createProduct_evictsMatchingSearchPagesOnly() {
+        Pageable pageable = Pageable.ofSize(10).withPage(0);
+        doReturn(Flux.empty()).when(productSearchService).search(anyString(), eq(pageable));
+        productDataService.findAll("phone", pageable).block();
+        productDataService.findAll("lamp", pageable).block();
+
+        Product product = new Product(null, "New phone", "", "", BigDecimal.TEN, 3);
+        FilePart image = mock(FilePart.class);
+        when(productRepository.save(product)).thenReturn(Mono.just(product));
+        when(imageService.saveToDisc(image, product.getImgPath())).thenReturn(Mono.empty());
+
+        productDataService.createProduct(product, image).block();
+
+        Cache pages = cacheManager.getCache("products_all");
+        assertNull(pages.get(ProductPageCache.key("phone", pageable)));
+        assertNotNull(pages.get(ProductPageCache.key("lamp", pageable)));
     }
 
     @Test
     void count_returnsCountFromRepository() {
         long expectedCount = 100;
-        when(productRepository.count()).thenReturn(Mono.just(expectedCount));
+        when(productRepository.countByStockQuantityGreaterThan(0)).thenReturn(Mono.just(expectedCount));
 
-        Mono<Long> result = productDataService.count();
+        Mono<Long> result = productDataService.count(null);
 
         StepVerifier.create(result)
                 .expectNext(expectedCount)
                 .verifyComplete();
 
-        verify(productRepository).count();
+        verify(productRepository).countByStockQuantityGreaterThan(0);
+        verify(productRepository, never()).count();
+    }
+
+    @Test
+    void count_withSearchTerm_usesSearchFilterAndCachesResult() {
+        String searchTerm = "Test";
+        long expectedCount = 3;
+        doReturn(Mono.just(expectedCount)).when(productSearchService).count(searchTerm);
+
+        productDataService.count(searchTerm).block();
+        reset(productSearchService);
+
+        StepVerifier.create(productDataService.count(searchTerm))
+                .expectNext(expectedCount)
+                .verifyComplete();
+
+        verify(productSearchService, never()).count(searchTerm);
     }
 
     // Здесь можно добавить тесты для обработки исключений, если это необходимо.
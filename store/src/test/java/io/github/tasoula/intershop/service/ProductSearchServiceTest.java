@@ -0,0 +1,81 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.ProductRepository;
+import io.github.tasoula.intershop.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static io.github.tasoula.intershop.enums.CatalogSort.PRICE_COLUMN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductSearchServiceTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @InjectMocks
+    private ProductSearchService productSearchService;
+
+    @Test
+    void search_unsorted_usesRelevanceOrderAndPageBounds() {
+        Pageable pageable = PageRequest.of(2, 5);
+        Product product = new Product();
+        when(productRepository.search("%phone%", "phone", "", 5, 10L)).thenReturn(Flux.just(product));
+
+        StepVerifier.create(productSearchService.search(" phone ", pageable))
+                .expectNext(product)
+                .verifyComplete();
+
+        verify(productRepository).search("%phone%", "phone", "", 5, 10L);
+    }
+
+    @Test
+    void search_sortedByPrice_passesSortColumn() {
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(PRICE_COLUMN).ascending());
+        when(productRepository.search("%phone%", "phone", PRICE_COLUMN, 10, 0L)).thenReturn(Flux.empty());
+
+        StepVerifier.create(productSearchService.search("phone", pageable))
+                .verifyComplete();
+
+        verify(productRepository).search("%phone%", "phone", PRICE_COLUMN, 10, 0L);
+    }
+
+    @Test
+    void count_usesSamePatternAsSearch() {
+        when(productRepository.countSearch("%phone%")).thenReturn(Mono.just(3L));
+
+        StepVerifier.create(productSearchService.count("phone"))
+                .expectNext(3L)
+                .verifyComplete();
+    }
+
+    @Test
+    void toLikePattern_escapesWildcards() {
+        assertEquals("%50\\%\\_off\\\\%", ProductSearchService.toLikePattern("50%_off\\"));
+    }
+
+    @Test
+    void matches_titleOrDescriptionIgnoringCase() {
+        Product product = new Product();
+        product.setTitle("Smart Phone");
+        product.setDescription("Black");
+
+        assertTrue(ProductSearchService.matches(product, " phone "));
+        assertTrue(ProductSearchService.matches(product, "BLACK"));
+        assertFalse(ProductSearchService.matches(product, "lamp"));
+    }
+}
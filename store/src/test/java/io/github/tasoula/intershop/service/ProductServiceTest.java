@@ -1,7 +1,9 @@
 package io.github.tasoula.intershop.service;
 
 
+import io.github.tasoula.intershop.dto.CatalogCursor;
 import io.github.tasoula.intershop.dto.ProductDto;
+import io.github.tasoula.intershop.enums.CatalogSort;
 import io.github.tasoula.intershop.model.CartItem;
 import io.github.tasoula.intershop.model.Product;
 import io.github.tasoula.intershop.exceptions.ResourceNotFoundException;
@@ -61,8 +63,8 @@ public class ProductServiceTest {
         // Arrange
         String search = "Test";
         when(productDataService.findAll(search, pageable)).thenReturn(Mono.just(List.of(product)));
-        when(productDataService.count()).thenReturn(Mono.just(1L));
-        when(cartService.getCartQuantity(userId, productId)).thenReturn(Mono.just(2));
+        when(productDataService.count(search)).thenReturn(Mono.just(1L));
+        when(cartService.getCartQuantities(userId, List.of(productId))).thenReturn(Mono.just(Map.of(productId, 2)));
 
         // Act
         Mono<Page<ProductDto>> result = productService.findAll(userId, search, pageable);
@@ -78,8 +80,61 @@ public class ProductServiceTest {
                 .verifyComplete();
 
         verify(productDataService).findAll(search, pageable);
-        verify(productDataService).count();
-        verify(cartService).getCartQuantity(userId, productId);
+        verify(productDataService).count(search);
+        verify(cartService).getCartQuantities(userId, List.of(productId));
+        verify(cartService, never()).getCartQuantity(any(), any());
+    }
+
+    @Test
+    void findAllByCursor_forward_returnsSliceWithNextCursor() {
+        Product product2 = new Product();
+        product2.setId(UUID.randomUUID());
+        product2.setTitle("Test Product 2");
+        product2.setDescription("Test Description");
+        product2.setPrice(BigDecimal.ONE);
+        product2.setStockQuantity(1);
+        CatalogCursor after = new CatalogCursor(CatalogSort.NO, 1, UUID.randomUUID(), null);
+
+        // pageSize = 1, читается на одну строку больше
+        when(productDataService.findAfter(after, 2)).thenReturn(Mono.just(List.of(product, product2)));
+        when(cartService.getCartQuantities(userId, List.of(productId, product2.getId()))).thenReturn(Mono.just(Map.of()));
+
+        StepVerifier.create(productService.findAllByCursor(userId, after, null, 1))
+                .assertNext(page -> {
+                    assertEquals(1, page.getSlice().getContent().size());
+                    assertEquals(productId, page.getSlice().getContent().get(0).getId());
+                    assertEquals(1, page.getSlice().getNumber());
+                    assertEquals(productId, CatalogCursor.decode(page.getNextCursor()).getId());
+                    assertEquals(2, CatalogCursor.decode(page.getNextCursor()).getPage());
+                    assertEquals(productId, CatalogCursor.decode(page.getPreviousCursor()).getId());
+                })
+                .verifyComplete();
+
+        verify(productDataService, never()).count(any());
+    }
+
+    @Test
+    void findAllByCursor_backwardToStart_returnsFirstPageInCatalogOrder() {
+        Product product2 = new Product();
+        product2.setId(UUID.randomUUID());
+        product2.setTitle("Test Product 2");
+        product2.setDescription("Test Description");
+        product2.setPrice(BigDecimal.ONE);
+        product2.setStockQuantity(1);
+        CatalogCursor before = new CatalogCursor(CatalogSort.NO, 0, UUID.randomUUID(), null);
+
+        // Строки приходят в обратном порядке
+        when(productDataService.findBefore(before, 3)).thenReturn(Mono.just(List.of(product2, product)));
+        when(cartService.getCartQuantities(userId, List.of(product2.getId(), productId))).thenReturn(Mono.just(Map.of()));
+
+        StepVerifier.create(productService.findAllByCursor(userId, null, before, 2))
+                .assertNext(page -> {
+                    assertEquals(List.of(productId, product2.getId()),
+                            page.getSlice().getContent().stream().map(ProductDto::getId).toList());
+                    assertEquals(0, page.getSlice().getNumber());
+                    assertEquals(null, page.getPreviousCursor());
+                })
+                .verifyComplete();
     }
 
     @Test
@@ -0,0 +1,251 @@
+package io.github.tasoula.intershop.service;
+
+import io.github.tasoula.intershop.dao.CartItemRepository;
+import io.github.tasoula.intershop.exceptions.OutOfStockException;
+import io.github.tasoula.intershop.model.CartItem;
+import io.github.tasoula.intershop.model.Product;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Testcontainers
+class RedisCartStoreTest {
+
+    @Container
+    private static final GenericContainer<?> redis = new GenericContainer<>("redis:7.4.2-bookworm").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private CartItemRepository cartItemRepository;
+    private ProductDataService productDataService;
+    private RedisCartStore cartStore;
+
+    private UUID userId;
+    private UUID productId;
+
+    @BeforeAll
+    static void beforeAll() {
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getFirstMappedPort());
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        connectionFactory.destroy();
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+        cartItemRepository = mock(CartItemRepository.class);
+        productDataService = mock(ProductDataService.class);
+        cartStore = new RedisCartStore(redisTemplate, cartItemRepository, productDataService, Duration.ofDays(1), 100);
+
+        userId = UUID.randomUUID();
+        productId = UUID.randomUUID();
+        when(productDataService.findById(productId))
+                .thenReturn(Mono.just(new Product(productId, "Товар", "", "", BigDecimal.TEN, 3)));
+        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.empty());
+        when(cartItemRepository.upsertAll(any(), any(), any(), any())).thenReturn(Mono.just(1));
+        when(cartItemRepository.deleteByUserIdAndProductIdNotIn(any(), any())).thenReturn(Mono.just(0));
+    }
+
+    @Test
+    void changeQuantity_clampsToStockAndRemovesAtZero() {
+        StepVerifier.create(cartStore.changeQuantity(userId, productId, 2)).expectNext(2).verifyComplete();
+        StepVerifier.create(cartStore.changeQuantity(userId, productId, 5)).expectNext(3).verifyComplete();
+        StepVerifier.create(cartStore.changeQuantity(userId, productId, -5)).expectNext(0).verifyComplete();
+
+        StepVerifier.create(cartStore.isEmpty(userId)).expectNext(true).verifyComplete();
+        verify(cartItemRepository, never()).upsertAll(any(), any(), any(), any()); // Запись в БД - только отложенно
+    }
+
+    @Test
+    void coldCart_loadedFromDatabaseOnce() {
+        CartItem stored = new CartItem(userId, productId);
+        stored.setQuantity(2);
+        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.just(stored));
+
+        StepVerifier.create(cartStore.getQuantity(userId, productId)).expectNext(2).verifyComplete();
+        StepVerifier.create(cartStore.getQuantities(userId, List.of(productId, UUID.randomUUID())))
+                .expectNext(Map.of(productId, 2))
+                .verifyComplete();
+
+        verify(cartItemRepository, times(1)).findByUserId(userId);
+    }
+
+    @Test
+    void findProducts_newestFirstWithProductData() {
+        UUID olderProductId = UUID.randomUUID();
+        when(productDataService.findById(olderProductId))
+                .thenReturn(Mono.just(new Product(olderProductId, "Старый товар", "", "", BigDecimal.ONE, 7)));
+        CartItem older = new CartItem(userId, olderProductId);
+        older.setQuantity(1);
+        older.setCreatedAt(new Timestamp(1_000L));
+        CartItem newer = new CartItem(userId, productId);
+        newer.setQuantity(2);
+        newer.setCreatedAt(new Timestamp(2_000L));
+        when(cartItemRepository.findByUserId(userId)).thenReturn(Flux.just(older, newer));
+
+        StepVerifier.create(cartStore.findProducts(userId))
+                .assertNext(product -> {
+                    assertThat(product.getId()).isEqualTo(productId);
+                    assertThat(product.getQuantity()).isEqualTo(2);
+                })
+                .assertNext(product -> assertThat(product.getTitle()).isEqualTo("Старый товар"))
+                .verifyComplete();
+    }
+
+    @Test
+    void flushDirtyCarts_writesChangedCartsInBatch() {
+        cartStore.changeQuantity(userId, productId, 2).block();
+
+        StepVerifier.create(cartStore.flushDirtyCarts()).verifyComplete();
+
+        ArgumentCaptor<UUID[]> productIds = ArgumentCaptor.forClass(UUID[].class);
+        ArgumentCaptor<Integer[]> quantities = ArgumentCaptor.forClass(Integer[].class);
+        verify(cartItemRepository).upsertAll(eq(userId), productIds.capture(), quantities.capture(), any());
+        assertThat(productIds.getValue()).containsExactly(productId);
+        assertThat(quantities.getValue()).containsExactly(2);
+        verify(cartItemRepository).deleteByUserIdAndProductIdNotIn(userId, productIds.getValue());
+
+        // Второй проход - корзина уже записана
+        reset(cartItemRepository);
+        StepVerifier.create(cartStore.flushDirtyCarts()).verifyComplete();
+        verifyNoInteractions(cartItemRepository);
+    }
+
+    @Test
+    void checkoutItems_flushesPendingChangesBeforeReadingDatabase() {
+        cartStore.changeQuantity(userId, productId, 1).block();
+
+        StepVerifier.create(cartStore.checkoutItems(userId)).verifyComplete();
+
+        var inOrder = inOrder(cartItemRepository);
+        inOrder.verify(cartItemRepository).upsertAll(eq(userId), any(), any(), any());
+        inOrder.verify(cartItemRepository).findByUserId(userId);
+    }
+
+    @Test
+    void checkoutItems_persistFails_keepsCartInFlushQueue() {
+        cartStore.changeQuantity(userId, productId, 1).block();
+        when(cartItemRepository.upsertAll(any(), any(), any(), any())).thenReturn(Mono.error(new IllegalStateException("db down")));
+
+        StepVerifier.create(cartStore.checkoutItems(userId)).verifyError(IllegalStateException.class);
+
+        assertThat(redisTemplate.opsForSet().isMember(RedisCartStore.DIRTY_KEY, userId.toString()).block()).isTrue();
+    }
+
+    @Test
+    void clear_removesRedisCartAndDatabaseRows() {
+        when(cartItemRepository.deleteByUserId(userId)).thenReturn(Mono.empty());
+        cartStore.changeQuantity(userId, productId, 1).block();
+
+        StepVerifier.create(cartStore.clear(userId)).verifyComplete();
+
+        verify(cartItemRepository).deleteByUserId(userId);
+        assertThat(redisTemplate.hasKey(RedisCartStore.cartKey(userId)).block()).isFalse();
+        assertThat(redisTemplate.opsForSet().isMember(RedisCartStore.DIRTY_KEY, userId.toString()).block()).isFalse();
+    }
+
+    @Test
+    void checkoutTransactionRolledBack_returnsCartToFlushQueueAndKeepsRedisCart() {
+        when(cartItemRepository.deleteByUserId(userId)).thenReturn(Mono.empty());
+        cartStore.changeQuantity(userId, productId, 2).block();
+        TransactionalOperator transaction = TransactionalOperator.create(new StubTransactionManager(false));
+
+        // Товара не хватило после записи корзины и её очистки - откат отменяет и запись в t_cart_items
+        StepVerifier.create(transaction.transactional(cartStore.checkoutItems(userId)
+                        .then(cartStore.clear(userId))
+                        .then(Mono.error(new OutOfStockException("Товара недостаточно на складе")))))
+                .verifyError(OutOfStockException.class);
+
+        assertThat(redisTemplate.opsForSet().isMember(RedisCartStore.DIRTY_KEY, userId.toString()).block()).isTrue();
+        StepVerifier.create(cartStore.getQuantity(userId, productId)).expectNext(2).verifyComplete();
+    }
+
+    @Test
+    void checkoutTransactionCommitted_removesRedisCartAfterCommit() {
+        when(cartItemRepository.deleteByUserId(userId)).thenReturn(Mono.empty());
+        cartStore.changeQuantity(userId, productId, 1).block();
+        StubTransactionManager transactionManager = new StubTransactionManager(false);
+        TransactionalOperator transaction = TransactionalOperator.create(transactionManager);
+
+        StepVerifier.create(transaction.transactional(cartStore.checkoutItems(userId)
+                        .then(cartStore.clear(userId))
+                        .then(redisTemplate.hasKey(RedisCartStore.cartKey(userId)))))
+                .expectNext(true) // До фиксации корзина в Redis на месте
+                .verifyComplete();
+
+        assertThat(transactionManager.committed).isTrue();
+        assertThat(redisTemplate.hasKey(RedisCartStore.cartKey(userId)).block()).isFalse();
+        assertThat(redisTemplate.opsForSet().isMember(RedisCartStore.DIRTY_KEY, userId.toString()).block()).isFalse();
+    }
+
+    @Test
+    void persist_cartBeingClearedByCheckout_skipsWrite() {
+        when(cartItemRepository.deleteByUserId(userId)).thenReturn(Mono.empty());
+        cartStore.changeQuantity(userId, productId, 1).block();
+        TransactionalOperator transaction = TransactionalOperator.create(new StubTransactionManager(false));
+
+        // Отложенная запись, забравшая корзину до очистки, выполняется уже после deleteByUserId
+        StepVerifier.create(transaction.transactional(cartStore.clear(userId).then(cartStore.persist(userId))))
+                .verifyComplete();
+
+        verify(cartItemRepository, never()).upsertAll(any(), any(), any(), any());
+        assertThat(redisTemplate.hasKey(RedisCartStore.cartKey(userId)).block()).isFalse();
+    }
+
+    @Test
+    void flushDirtyCarts_cartClearedDuringWrite_removesWrittenRows() {
+        when(cartItemRepository.deleteByUserId(userId)).thenReturn(Mono.empty());
+        cartStore.changeQuantity(userId, productId, 1).block();
+        // Заказ оформлен и корзина очищена, пока отложенная запись писала позиции
+        when(cartItemRepository.upsertAll(eq(userId), any(), any(), any()))
+                .thenReturn(Mono.defer(() -> cartStore.clear(userId).thenReturn(1)));
+
+        StepVerifier.create(cartStore.flushDirtyCarts()).verifyComplete();
+
+        verify(cartItemRepository, times(2)).deleteByUserId(userId); // очистка и удаление записанных строк
+        assertThat(redisTemplate.opsForSet().isMember(RedisCartStore.DIRTY_KEY, userId.toString()).block()).isFalse();
+    }
+
+    @Test
+    void changeQuantity_cartExpiredBeforeChange_doesNotWriteIntoUnloadedHash() {
+        // TTL 0: хеш исчезает сразу после загрузки, до скрипта изменения
+        RedisCartStore expiringStore = new RedisCartStore(redisTemplate, cartItemRepository, productDataService, Duration.ZERO, 100);
+
+        StepVerifier.create(expiringStore.changeQuantity(userId, productId, 1))
+                .verifyError(IllegalStateException.class);
+
+        assertThat(redisTemplate.hasKey(RedisCartStore.cartKey(userId)).block()).isFalse();
+        assertThat(redisTemplate.opsForSet().isMember(RedisCartStore.DIRTY_KEY, userId.toString()).block()).isFalse();
+    }
+}
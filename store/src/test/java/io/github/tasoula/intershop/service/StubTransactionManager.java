@@ -0,0 +1,43 @@
+package io.github.tasoula.intershop.service;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.AbstractReactiveTransactionManager;
+import org.springframework.transaction.reactive.GenericReactiveTransaction;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+
+// Транзакция без БД: проверяет только синхронизации (afterCommit/afterCompletion) и исход фиксации
+class StubTransactionManager extends AbstractReactiveTransactionManager {
+    private final boolean failOnCommit;
+    volatile boolean committed;
+
+    StubTransactionManager(boolean failOnCommit) {
+        this.failOnCommit = failOnCommit;
+    }
+
+    @Override
+    protected Object doGetTransaction(TransactionSynchronizationManager synchronizationManager) {
+        return new Object();
+    }
+
+    @Override
+    protected Mono<Void> doBegin(TransactionSynchronizationManager synchronizationManager, Object transaction,
+                                 TransactionDefinition definition) {
+        return Mono.empty();
+    }
+
+    @Override
+    protected Mono<Void> doCommit(TransactionSynchronizationManager synchronizationManager,
+                                  GenericReactiveTransaction status) {
+        if (failOnCommit) {
+            return Mono.error(new IllegalStateException("commit failed"));
+        }
+        return Mono.fromRunnable(() -> committed = true);
+    }
+
+    @Override
+    protected Mono<Void> doRollback(TransactionSynchronizationManager synchronizationManager,
+                                    GenericReactiveTransaction status) {
+        return Mono.empty();
+    }
+}